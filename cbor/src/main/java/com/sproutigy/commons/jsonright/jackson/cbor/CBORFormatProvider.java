@@ -0,0 +1,18 @@
+package com.sproutigy.commons.jsonright.jackson.cbor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.sproutigy.commons.jsonright.jackson.JSON;
+import com.sproutigy.commons.jsonright.jackson.JSONFormatProvider;
+
+public final class CBORFormatProvider implements JSONFormatProvider {
+    @Override
+    public JSON.Format getFormat() {
+        return JSON.Format.CBOR;
+    }
+
+    @Override
+    public JsonFactory createFactory() {
+        return new CBORFactory();
+    }
+}
@@ -0,0 +1,167 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.POJONode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Iterator;
+
+//RFC 8785 (JSON Canonicalization Scheme) style output written straight from nodes tree:
+//fields sorted by UTF-16 code units, numbers in ECMAScript form, only mandatory characters escaped
+final class CanonicalWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ObjectMapper objectMapper;
+    private final Appendable out;
+
+    CanonicalWriter(ObjectMapper objectMapper, Appendable out) {
+        this.objectMapper = objectMapper;
+        this.out = out;
+    }
+
+    void write(JsonNode node) throws IOException {
+        if (node.isObject()) {
+            //only names are sorted, the tree itself is left untouched
+            String[] fieldNames = new String[node.size()];
+            int i = 0;
+            Iterator<String> fieldNamesIterator = node.fieldNames();
+            while (fieldNamesIterator.hasNext()) {
+                fieldNames[i++] = fieldNamesIterator.next();
+            }
+            Arrays.sort(fieldNames);
+            out.append('{');
+            for (i = 0; i < fieldNames.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeString(fieldNames[i]);
+                out.append(':');
+                write(node.get(fieldNames[i]));
+            }
+            out.append('}');
+        } else if (node.isArray()) {
+            out.append('[');
+            for (int i = 0; i < node.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                write(node.get(i));
+            }
+            out.append(']');
+        } else if (node.isTextual()) {
+            writeString(node.textValue());
+        } else if (node.isNumber()) {
+            writeNumber(node);
+        } else if (node.isBoolean()) {
+            out.append(node.booleanValue() ? "true" : "false");
+        } else if (node.isBinary()) {
+            writeString(node.asText());
+        } else if (node.isPojo() && ((POJONode) node).getPojo() != null) {
+            JsonNode value = objectMapper.valueToTree(((POJONode) node).getPojo());
+            if (value.isPojo()) {
+                writeString(String.valueOf(((POJONode) value).getPojo()));
+            } else {
+                write(value);
+            }
+        } else {
+            out.append("null");
+        }
+    }
+
+    private void writeNumber(JsonNode node) throws IOException {
+        BigDecimal decimal;
+        if (node.isIntegralNumber()) {
+            if (node.canConvertToLong()) {
+                out.append(Long.toString(node.longValue()));
+                return;
+            }
+            decimal = new BigDecimal(node.bigIntegerValue());
+        } else if (node.isBigDecimal()) {
+            decimal = node.decimalValue();
+        } else {
+            double value = node.doubleValue();
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new IllegalArgumentException("NaN and infinite numbers are not allowed in canonical JSON");
+            }
+            decimal = new BigDecimal(Double.toString(value));
+        }
+
+        if (decimal.signum() == 0) {
+            out.append('0');
+            return;
+        }
+        decimal = decimal.stripTrailingZeros();
+        if (decimal.signum() < 0) {
+            out.append('-');
+        }
+        String digits = decimal.unscaledValue().abs().toString();
+        int k = digits.length();
+        //value is 0.digits * 10^n
+        int n = k - decimal.scale();
+        if (k <= n && n <= 21) {
+            out.append(digits);
+            for (int i = k; i < n; i++) {
+                out.append('0');
+            }
+        } else if (0 < n && n <= 21) {
+            out.append(digits, 0, n).append('.').append(digits, n, k);
+        } else if (-6 < n && n <= 0) {
+            out.append("0.");
+            for (int i = n; i < 0; i++) {
+                out.append('0');
+            }
+            out.append(digits);
+        } else {
+            int exponent = n - 1;
+            out.append(digits.charAt(0));
+            if (k > 1) {
+                out.append('.').append(digits, 1, k);
+            }
+            out.append('e').append(exponent < 0 ? '-' : '+').append(Integer.toString(Math.abs(exponent)));
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+            }
+        }
+        out.append(value, start, value.length());
+        out.append('"');
+    }
+}
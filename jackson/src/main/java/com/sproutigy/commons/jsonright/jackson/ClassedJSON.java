@@ -90,7 +90,7 @@ public final class ClassedJSON {
     }
 
     public static String fetchClassName(JSON json) {
-        return json.nodeObject().fields().next().getKey();
+        return json.node().fields().next().getKey();
     }
 
     static class MySerializer extends StdSerializer<ClassedJSON> {
@@ -134,8 +134,11 @@ public final class ClassedJSON {
                 if (currentToken == START_OBJECT) {
                     String className = jsonParser.getCurrentName();
                     try {
-                        Object val = jsonParser.readValueAs(Class.forName(className));
+                        long started = JSON.eventStart(JSONEvent.Type.ClassedDecode);
+                        Class<?> clazz = Class.forName(className);
+                        Object val = jsonParser.readValueAs(clazz);
                         ret.set(val);
+                        JSON.eventEnd(JSONEvent.Type.ClassedDecode, started, -1, null, null, clazz, null);
                     } catch (ClassNotFoundException e) {
                         throw new IOException("Class not found: " + className, e);
                     }
@@ -4,32 +4,86 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.util.RawValue;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 @JsonSerialize(using = JSON.Serializer.class)
 @JsonDeserialize(using = JSON.Deserializer.class)
 public final class JSON implements Serializable, Cloneable {
 
+    private static final long serialVersionUID = -7884921056819828541L;
+
     public static final String MIME_TYPE = "application/json";
     public static final String DEFAULT_ENCODING = "UTF-8";
     public static final Charset DEFAULT_CHARSET = Charset.forName(DEFAULT_ENCODING);
     public static final String CONTENT_TYPE_WITH_DEFAULT_ENCODING = MIME_TYPE + "; charset=" + DEFAULT_ENCODING.toLowerCase();
 
+    public static final int DEFAULT_POOLED_BUILDER_MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
     private static ObjectMapper DEFAULT_OBJECT_MAPPER = null;
+    private static final Map<Format, ObjectMapper> FORMAT_OBJECT_MAPPERS = new ConcurrentHashMap<Format, ObjectMapper>();
+
+    private static final int FROZEN_PATH_CACHE_LIMIT = 1024;
+
+    private static final byte SERIAL_FORMAT_MARKER = (byte) 0xA5;
+    private static final byte SERIAL_FORMAT_VERSION = 2;
+    private static final byte SERIAL_BODY_TEXT = 0;
+    private static final byte SERIAL_BODY_BINARY = 1;
+
+    private static final ThreadLocal<Builder> POOLED_BUILDER = new ThreadLocal<Builder>();
+    private static volatile int pooledBuilderMaxRetainedBufferSize = DEFAULT_POOLED_BUILDER_MAX_RETAINED_BUFFER_SIZE;
+    private static volatile FragmentVerification fragmentVerification = FragmentVerification.None;
+    private static volatile int numericArrayThreshold = 0;
+    private static volatile JSONParseCache parseCache;
+    private static volatile JSONMetrics metrics;
+    //placeholder until the first operation, so that a broken service registration cannot fail class initialization
+    private static final JSONEventListener UNDISCOVERED_EVENT_LISTENER = new JSONEventListener() {
+        @Override
+        public boolean isEnabled(JSONEvent.Type type) {
+            return false;
+        }
+
+        @Override
+        public long getThresholdNanos(JSONEvent.Type type) {
+            return 0L;
+        }
+
+        @Override
+        public void onEvent(JSONEvent event) {
+        }
+    };
+    private static volatile JSONEventListener eventListener = UNDISCOVERED_EVENT_LISTENER;
 
     private enum Operation {
         GET, SET, REMOVE
@@ -39,13 +93,29 @@ public final class JSON implements Serializable, Cloneable {
     private String str;
     private Formatting strFormatting = null;
     private transient JsonNode node;
-
+    private transient JSONTape tape;
+    private transient boolean fragmentVerified;
+    private transient volatile Frozen frozen;
+    private transient Set<JsonNode> ownedNodes;
+    private transient volatile ConcurrentHashMap<String, PathIndex> indexes;
+    private transient int modCount;
+    private transient volatile NodeHasher hasher;
+
+    //ordinals are serialized, so new values go last
     public enum Formatting {
-        Unknown, Compact, Pretty
+        Unknown, Compact, Pretty, Canonical
     }
 
     public enum StorageType {
-        Unknown, String, NodeTree
+        Unknown, String, NodeTree, Tape
+    }
+
+    public enum Format {
+        Text, Smile, CBOR, MessagePack
+    }
+
+    public enum FragmentVerification {
+        None, Once, Always
     }
 
     public JSON() {
@@ -109,23 +179,54 @@ public final class JSON implements Serializable, Cloneable {
         if (DEFAULT_OBJECT_MAPPER == null) {
             synchronized (JSON.class) {
                 if (DEFAULT_OBJECT_MAPPER == null) {
-                    DEFAULT_OBJECT_MAPPER = new ObjectMapper();
-                    DEFAULT_OBJECT_MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-                    DEFAULT_OBJECT_MAPPER.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-                    DEFAULT_OBJECT_MAPPER.enable(DeserializationFeature.FAIL_ON_READING_DUP_TREE_KEY);
-                    DEFAULT_OBJECT_MAPPER.disable(DeserializationFeature.FAIL_ON_IGNORED_PROPERTIES);
-                    DEFAULT_OBJECT_MAPPER.getFactory().setCodec(DEFAULT_OBJECT_MAPPER);
+                    DEFAULT_OBJECT_MAPPER = configureObjectMapper(new ObjectMapper());
                 }
             }
         }
         return DEFAULT_OBJECT_MAPPER;
     }
 
+    public static ObjectMapper getFormatObjectMapper(Format format) {
+        if (format == null || format == Format.Text) {
+            return getDefaultObjectMapper();
+        }
+
+        ObjectMapper objectMapper = FORMAT_OBJECT_MAPPERS.get(format);
+        if (objectMapper == null) {
+            synchronized (FORMAT_OBJECT_MAPPERS) {
+                objectMapper = FORMAT_OBJECT_MAPPERS.get(format);
+                if (objectMapper == null) {
+                    for (JSONFormatProvider provider : ServiceLoader.load(JSONFormatProvider.class, JSON.class.getClassLoader())) {
+                        if (provider.getFormat() == format) {
+                            objectMapper = configureObjectMapper(new ObjectMapper(provider.createFactory()));
+                            break;
+                        }
+                    }
+                    if (objectMapper == null) {
+                        throw new IllegalStateException("No JSONFormatProvider available for format: " + format);
+                    }
+                    FORMAT_OBJECT_MAPPERS.put(format, objectMapper);
+                }
+            }
+        }
+        return objectMapper;
+    }
+
+    private static ObjectMapper configureObjectMapper(ObjectMapper objectMapper) {
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.enable(DeserializationFeature.FAIL_ON_READING_DUP_TREE_KEY);
+        objectMapper.disable(DeserializationFeature.FAIL_ON_IGNORED_PROPERTIES);
+        objectMapper.getFactory().setCodec(objectMapper);
+        return objectMapper;
+    }
+
     public ObjectMapper getLocalObjectMapper() {
         return localObjectMapper;
     }
 
     public JSON setLocalObjectMapper(ObjectMapper localObjectMapper) {
+        checkMutable();
         this.localObjectMapper = localObjectMapper;
         return this;
     }
@@ -162,6 +263,69 @@ public final class JSON implements Serializable, Cloneable {
         return NullNode.getInstance();
     }
 
+    public static JSON immutable(String jsonString) {
+        JSONParseCache cache = parseCache;
+        JSON json = new JSON(jsonString);
+        if (cache != null && !json.str.isEmpty()) {
+            //cached documents are frozen already, so they are handed out as a whole
+            JSON document = json.parseShared(cache);
+            if (document != null) {
+                return document;
+            }
+            json.str = null;
+        }
+        return json.freeze();
+    }
+
+    public static JSON immutable(JSON other) {
+        if (other.isFrozen()) {
+            return other;
+        }
+        return new JSON().setLocalObjectMapper(other.localObjectMapper).setRaw(other, true).freeze();
+    }
+
+    public static JSON tape(String jsonString) {
+        try {
+            JsonParser parser = getDefaultObjectMapper().getFactory().createParser(jsonString);
+            try {
+                JSON json = new JSON();
+                json.tape = JSONTape.parse(parser);
+                return json;
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static JSON tape(byte[] data) {
+        return tape(new JSON(data).toString());
+    }
+
+    public static JSON interned(String jsonString) {
+        return interned(jsonString, new JSONInterner());
+    }
+
+    public static JSON interned(String jsonString, JSONInterner interner) {
+        ObjectMapper objectMapper = getDefaultObjectMapper();
+        try {
+            JsonParser parser = objectMapper.getFactory().createParser(jsonString);
+            try {
+                JsonNode node = new NodeTreeReader(objectMapper, interner, numericArrayThreshold).read(parser);
+                return new JSON(node != null ? node : nullNode());
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static JSON interned(byte[] data, JSONInterner interner) {
+        return interned(new JSON(data).toString(), interner);
+    }
+
     public static JSON fromString(String jsonString) {
         return new JSON(jsonString);
     }
@@ -178,6 +342,26 @@ public final class JSON implements Serializable, Cloneable {
         return new JSON(data, offset, length);
     }
 
+    public static JSON fromBytes(byte[] data, Format format) {
+        return fromBytes(data, 0, data.length, format);
+    }
+
+    public static JSON fromBytes(byte[] data, int offset, int length, Format format) {
+        if (format == null || format == Format.Text) {
+            return new JSON(data, offset, length);
+        }
+
+        try {
+            return new JSON(getFormatObjectMapper(format).readTree(new ByteArrayInputStream(data, offset, length)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static JSONName name(String name) {
+        return new JSONName(name);
+    }
+
     public static JSON serialize(Object o) {
         if (o == null)
             return newNull();
@@ -233,6 +417,10 @@ public final class JSON implements Serializable, Cloneable {
         return new Builder(formatting);
     }
 
+    public static BuilderRoot builder(Format format) {
+        return new Builder(null, Formatting.Compact, format);
+    }
+
     public static BuilderRoot builder(ObjectMapper objectMapper) {
         return new Builder(objectMapper, Formatting.Compact);
     }
@@ -241,6 +429,166 @@ public final class JSON implements Serializable, Cloneable {
         return new Builder(objectMapper, formatting);
     }
 
+    public static BuilderRoot pooledBuilder() {
+        return pooledBuilder(Formatting.Compact);
+    }
+
+    public static BuilderRoot pooledBuilder(Formatting formatting) {
+        Builder builder = POOLED_BUILDER.get();
+        if (builder == null) {
+            builder = new Builder(formatting);
+            builder.pooled = true;
+            POOLED_BUILDER.set(builder);
+        } else if (builder.inUse) {
+            //nested usage on the same thread - pooled instance is busy, so fall back to a regular one
+            return new Builder(formatting);
+        } else {
+            builder.reset(formatting);
+        }
+        builder.inUse = true;
+        return builder;
+    }
+
+    public static int getPooledBuilderMaxRetainedBufferSize() {
+        return pooledBuilderMaxRetainedBufferSize;
+    }
+
+    public static void setPooledBuilderMaxRetainedBufferSize(int maxRetainedBufferSize) {
+        if (maxRetainedBufferSize < 0) {
+            throw new IllegalArgumentException("maxRetainedBufferSize < 0");
+        }
+        pooledBuilderMaxRetainedBufferSize = maxRetainedBufferSize;
+    }
+
+    public static int getNumericArrayThreshold() {
+        return numericArrayThreshold;
+    }
+
+    //homogeneous arrays of at least that many numbers are parsed into primitive-backed nodes, 0 disables
+    public static void setNumericArrayThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold < 0");
+        }
+        numericArrayThreshold = threshold;
+    }
+
+    public static JSONParseCache getParseCache() {
+        return parseCache;
+    }
+
+    //parsed trees of repeated inputs are shared through the cache, null disables
+    public static void setParseCache(JSONParseCache cache) {
+        parseCache = cache;
+    }
+
+    public static JSONMetrics getMetrics() {
+        return metrics;
+    }
+
+    //hidden parses and conversions are counted when set, null (default) disables
+    public static void setMetrics(JSONMetrics metrics) {
+        JSON.metrics = metrics;
+    }
+
+    private static long metricsStart() {
+        return metrics != null ? System.nanoTime() : 0L;
+    }
+
+    private static void metricsRecord(JSONMetrics.Kind kind, long started, long size) {
+        JSONMetrics metrics = JSON.metrics;
+        if (metrics != null && started != 0L) {
+            metrics.record(kind, size, System.nanoTime() - started);
+        }
+    }
+
+    public static JSONEventListener getEventListener() {
+        JSONEventListener listener = eventListener;
+        return listener != UNDISCOVERED_EVENT_LISTENER ? listener : discoverEventListener();
+    }
+
+    //timed operations are reported when set, null disables; by default the first listener registered
+    //as a JSONEventListener service is used
+    public static void setEventListener(JSONEventListener listener) {
+        synchronized (UNDISCOVERED_EVENT_LISTENER) {
+            eventListener = listener;
+        }
+    }
+
+    //service lookup errors leave events disabled instead of failing the operation
+    private static JSONEventListener discoverEventListener() {
+        synchronized (UNDISCOVERED_EVENT_LISTENER) {
+            if (eventListener == UNDISCOVERED_EVENT_LISTENER) {
+                JSONEventListener listener = null;
+                try {
+                    Iterator<JSONEventListener> listeners = ServiceLoader.load(JSONEventListener.class, JSON.class.getClassLoader()).iterator();
+                    if (listeners.hasNext()) {
+                        listener = listeners.next();
+                    }
+                } catch (ServiceConfigurationError ignore) {
+                } catch (RuntimeException ignore) {
+                }
+                eventListener = listener;
+            }
+            return eventListener;
+        }
+    }
+
+    static long eventStart(JSONEvent.Type type) {
+        JSONEventListener listener = eventListener;
+        if (listener == null) {
+            return 0L;
+        }
+        if (listener == UNDISCOVERED_EVENT_LISTENER) {
+            listener = discoverEventListener();
+        }
+        return listener != null && listener.isEnabled(type) ? System.nanoTime() : 0L;
+    }
+
+    static void eventEnd(JSONEvent.Type type, long started, long size, StorageType storageType, Formatting formatting, Class<?> targetClass, String path) {
+        if (started == 0L) {
+            return;
+        }
+        JSONEventListener listener = eventListener;
+        if (listener == null) {
+            return;
+        }
+        long duration = System.nanoTime() - started;
+        if (duration >= listener.getThresholdNanos(type)) {
+            listener.onEvent(new JSONEvent(type, started, duration, size, storageType, formatting, targetClass, path));
+        }
+    }
+
+    public static FragmentVerification getFragmentVerification() {
+        return fragmentVerification;
+    }
+
+    public static void setFragmentVerification(FragmentVerification verification) {
+        if (verification == null) {
+            throw new NullPointerException("verification == null");
+        }
+        fragmentVerification = verification;
+    }
+
+    public static JSON composeArray(JSON... fragments) {
+        return composeArray(Arrays.asList(fragments));
+    }
+
+    public static JSON composeArray(Iterable<JSON> fragments) {
+        BuilderArray<BuilderTerminate> builder = builder().startArray();
+        for (JSON fragment : fragments) {
+            builder.value(fragment);
+        }
+        return builder.endArray().build();
+    }
+
+    public static JSON composeObject(Map<String, JSON> fragments) {
+        BuilderObject<BuilderTerminate> builder = builder().startObject();
+        for (Map.Entry<String, JSON> entry : fragments.entrySet()) {
+            builder.field(entry.getKey(), entry.getValue());
+        }
+        return builder.endObject().build();
+    }
+
     public static BuilderRoot builderCompact() {
         return builder(Formatting.Compact);
     }
@@ -341,6 +689,37 @@ public final class JSON implements Serializable, Cloneable {
             return get();
         }
 
+        long started = eventStart(JSONEvent.Type.ResolvePath);
+        if (started == 0L) {
+            return getPath(path);
+        }
+        StorageType storageType = getCurrentStorageType();
+        JsonNode result = getPath(path);
+        eventEnd(JSONEvent.Type.ResolvePath, started, -1, storageType, null, null, path);
+        return result;
+    }
+
+    private JsonNode getPath(String path) {
+        if (tape != null) {
+            int index = tape.find(path);
+            return index != -1 ? tape.toNode(index, getObjectMapper().getNodeFactory()) : null;
+        }
+
+        Frozen frozen = this.frozen;
+        if (frozen != null) {
+            JsonNode result = frozen.paths.get(path);
+            if (result == null) {
+                result = resolvePath(node, path, Operation.GET, null);
+                if (result == null) {
+                    result = MissingNode.getInstance();
+                }
+                if (frozen.paths.size() < FROZEN_PATH_CACHE_LIMIT) {
+                    frozen.paths.put(path, result);
+                }
+            }
+            return result.isMissingNode() ? null : result;
+        }
+
         return resolvePath(node(), path, Operation.GET, null);
     }
 
@@ -375,7 +754,199 @@ public final class JSON implements Serializable, Cloneable {
         return value;
     }
 
+    public double[] getDoubleArray(String path) {
+        JsonNode node = get(path);
+        if (node instanceof NumericArrayNode) {
+            return ((NumericArrayNode) node).doubleValues();
+        }
+        return toPrimitiveArray(node, double[].class);
+    }
+
+    public long[] getLongArray(String path) {
+        JsonNode node = get(path);
+        if (node instanceof NumericArrayNode) {
+            return ((NumericArrayNode) node).longValues();
+        }
+        return toPrimitiveArray(node, long[].class);
+    }
+
+    private <T> T toPrimitiveArray(JsonNode node, Class<T> clazz) {
+        if (node == null || !node.isArray()) {
+            return null;
+        }
+        try {
+            return getObjectMapper().treeToValue(node, clazz);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    public JSONColumns columns(String path, JSONColumns.Spec... specs) {
+        try {
+            JsonParser parser = valueParser(path);
+            if (parser == null) {
+                return null;
+            }
+            try {
+                if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                    return null;
+                }
+                return JSONColumns.read(parser, specs);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //parser positioned at the first token of a value resolved by the path, without building a tree for it
+    private JsonParser valueParser(String path) throws IOException {
+        JsonParser parser;
+        if (tape != null) {
+            int index = (path == null || path.isEmpty()) ? 0 : tape.find(path);
+            if (index == -1) {
+                return null;
+            }
+            TokenBuffer buffer = new TokenBuffer(getObjectMapper(), false);
+            tape.write(buffer, index);
+            parser = buffer.asParser();
+        } else if (node != null) {
+            JsonNode value = get(path);
+            if (value == null) {
+                return null;
+            }
+            parser = value.traverse(getObjectMapper());
+        } else {
+            parser = parser();
+            if (!StreamingPath.seek(parser, path)) {
+                parser.close();
+                return null;
+            }
+            return parser;
+        }
+        parser.nextToken();
+        return parser;
+    }
+
+    //opt-in hash index of array items at the path, built lazily on first has(path, value)/indexOf(path, value)
+    public JSON index(String path) {
+        if (path == null) {
+            throw new NullPointerException("path == null");
+        }
+        ConcurrentHashMap<String, PathIndex> indexes = this.indexes;
+        if (indexes == null) {
+            synchronized (this) {
+                if (this.indexes == null) {
+                    this.indexes = new ConcurrentHashMap<String, PathIndex>();
+                }
+                indexes = this.indexes;
+            }
+        }
+        indexes.putIfAbsent(path, PathIndex.UNBUILT);
+        return this;
+    }
+
+    public JSON unindex(String path) {
+        Map<String, PathIndex> indexes = this.indexes;
+        if (indexes != null) {
+            indexes.remove(path);
+        }
+        return this;
+    }
+
+    public boolean isIndexed(String path) {
+        Map<String, PathIndex> indexes = this.indexes;
+        return indexes != null && indexes.containsKey(path);
+    }
+
+    private PathIndex pathIndex(String path, JsonNode array) {
+        Map<String, PathIndex> indexes = this.indexes;
+        if (indexes == null || tape != null) {
+            return null;
+        }
+        PathIndex index = indexes.get(path);
+        if (index == null) {
+            return null;
+        }
+        //rebuilt when the array got replaced or resized behind the index
+        if (index.array != array || index.size != array.size()) {
+            index = new PathIndex(array);
+            indexes.put(path, index);
+        }
+        return index;
+    }
+
+    private void invalidateIndexes(String path) {
+        Map<String, PathIndex> indexes = this.indexes;
+        if (indexes != null && path != null) {
+            for (Map.Entry<String, PathIndex> entry : indexes.entrySet()) {
+                String indexPath = entry.getKey();
+                if (path.startsWith(indexPath) || indexPath.startsWith(path)) {
+                    entry.setValue(PathIndex.UNBUILT);
+                }
+            }
+        }
+    }
+
+    public Stream<JsonNode> query(String expression) {
+        return query(JSONPath.compile(expression));
+    }
+
+    //lazy: nodes trees are walked and string and tape storages are matched while the stream is consumed;
+    //closing the stream closes the streaming parser when not consumed to the end
+    public Stream<JsonNode> query(JSONPath path) {
+        if (node != null || (str == null && tape == null)) {
+            return stream(path.evaluate(node()));
+        }
+        final JsonParser parser;
+        try {
+            parser = valueParser(null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (parser == null) {
+            return Stream.empty();
+        }
+        return stream(path.evaluate(parser, getObjectMapper(), numericArrayThreshold)).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    public <T> Stream<T> query(String expression, Class<? extends T> clazz) {
+        return query(JSONPath.compile(expression), clazz);
+    }
+
+    public <T> Stream<T> query(JSONPath path, final Class<? extends T> clazz) {
+        return query(path).map(new Function<JsonNode, T>() {
+            @Override
+            public T apply(JsonNode node) {
+                try {
+                    return getObjectMapper().treeToValue(node, clazz);
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    private static <T> Stream<T> stream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
     public boolean has(String path) {
+        if (tape != null && path != null && !path.isEmpty()) {
+            int index = tape.find(path);
+            return index != -1 && !tape.isNull(index);
+        }
+
         JsonNode node = get(path);
         return (node != null && !node.isNull());
     }
@@ -389,16 +960,20 @@ public final class JSON implements Serializable, Cloneable {
 
         if (n != null) {
             if (n.isArray()) {
+                PathIndex index = pathIndex(path, n);
+                if (index != null) {
+                    return index.positions.containsKey(new IndexKey(valueNode));
+                }
                 for (int i = 0; i < n.size(); i++) {
                     JsonNode arrayItemNode = n.get(i);
-                    if (valueNode.equals(arrayItemNode)) {
+                    if (NumericArrayNode.equal(valueNode, arrayItemNode)) {
                         return true;
                     }
                 }
             } else if (n.isObject()) {
                 return n.has(value.toString());
             } else {
-                return valueNode.equals(n);
+                return NumericArrayNode.equal(valueNode, n);
             }
         }
         return false;
@@ -408,7 +983,12 @@ public final class JSON implements Serializable, Cloneable {
         JsonNode node = get(path);
         if (node != null) {
             if (node.isArray()) {
-                return findIndexOf((ArrayNode) node, value);
+                PathIndex index = pathIndex(path, node);
+                if (index != null) {
+                    Integer position = index.positions.get(new IndexKey(convertToNode(value)));
+                    return position != null ? position : -1;
+                }
+                return findIndexOf(node, value);
             }
             if (node.isObject()) {
                 int i = 0;
@@ -429,6 +1009,8 @@ public final class JSON implements Serializable, Cloneable {
         if (path == null || path.isEmpty()) {
             return set(value);
         }
+        checkMutable();
+        invalidateIndexes(path);
 
         if (path.charAt(0) == '[') {
             if (!isArray()) {
@@ -439,12 +1021,19 @@ public final class JSON implements Serializable, Cloneable {
             setRaw(newObjectNode());
         }
 
+        prepareWritePath(path, true);
         resolvePath(node(), path, Operation.SET, value);
+        prepareWritePath(path, false);
         return this;
     }
 
     public JSON set(Object value) {
-        return setRaw(convertToNode(value));
+        boolean shared = value instanceof JSON && value != this && ((JSON) value).isTreeShared();
+        setRaw(insertNode(value));
+        if (shared) {
+            shareTree();
+        }
+        return this;
     }
 
     public JSON remove(String path) {
@@ -452,22 +1041,510 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     public JSON remove(String path, Object value) {
+        checkMutable();
+        invalidateIndexes(path);
+        prepareWritePath(path, true);
         resolvePath(node(), path, Operation.REMOVE, value);
         return this;
     }
 
-    private JsonNode resolvePath(JsonNode node, String path, Operation operation, Object value) {
-        if (node == null || node.isNull()) {
-            return null;
+    public JSONCursor at(String path) {
+        node();
+        return new JSONCursor(this, path);
+    }
+
+    JsonNode resolve(JsonNode container, String path) {
+        return resolvePath(container, path, Operation.GET, null);
+    }
+
+    //writable container at the path, created when missing and copied when shared with other copies
+    JsonNode cursorContainer(String path, boolean array) {
+        JsonNode container = get(path);
+        if (container == null || container.isNull()) {
+            JsonNode created = array ? newArrayNode() : newObjectNode();
+            if (path.isEmpty()) {
+                setRaw(created);
+            } else {
+                if (ownedNodes != null) {
+                    ownedNodes.add(created);
+                }
+                set(path, created);
+            }
+            return created;
         }
-        if (path == null || path.isEmpty()) {
-            return node;
+        if (!container.isObject() && !container.isArray()) {
+            throw new IllegalStateException("JSON cursor path does not point to a container");
         }
-        if (path.startsWith(".") || path.endsWith(".") || path.startsWith("]") || path.endsWith("[")) {
-            throw new IllegalArgumentException("Malformed JSON path");
+        if (isWritable(container, ownedNodes)) {
+            return container;
         }
 
-        JsonNode result = null;
+        JsonNode copy = writableContainer(container);
+        if (path.isEmpty()) {
+            checkMutable();
+            node = copy;
+        } else {
+            set(path, copy);
+        }
+        return copy;
+    }
+
+    boolean isOwned(JsonNode container) {
+        return isWritable(container, ownedNodes);
+    }
+
+    void write(JsonNode container, String containerPath, String path, boolean remove, Object value) {
+        checkMutable();
+        if (containerPath.isEmpty()) {
+            invalidateIndexes(path);
+        } else {
+            invalidateIndexes(path.charAt(0) == '[' ? containerPath + path : containerPath + "." + path);
+        }
+
+        forgetHashes(containerPath);
+        Set<JsonNode> owned = ownedNodes;
+        prepareWritePath(container, path, true, owned);
+        resolvePath(container, path, remove ? Operation.REMOVE : Operation.SET, value);
+        if (owned != null) {
+            prepareWritePath(container, path, false, owned);
+        }
+    }
+
+    public static JSON diff(JSON source, JSON target) {
+        return new JSON(JSONPatch.diff(source.node(), target.node(), source.getObjectMapper().getNodeFactory()));
+    }
+
+    public JSON apply(JSON patch) {
+        checkMutable();
+        Set<JsonNode> fresh = newIdentitySet();
+        adopt(JSONPatch.apply(node(), patch.node(), getObjectMapper().getNodeFactory(), fresh), fresh);
+        return this;
+    }
+
+    public JSON merge(JSON mergePatch) {
+        checkMutable();
+        Set<JsonNode> fresh = newIdentitySet();
+        adopt(JSONPatch.merge(node(), mergePatch.node(), getObjectMapper().getNodeFactory(), fresh), fresh);
+        return this;
+    }
+
+    //patches are applied to path copies of the tree, which share unmodified containers with it
+    private void adopt(JsonNode result, Set<JsonNode> fresh) {
+        Set<JsonNode> owned = ownedNodes;
+        if (owned != null) {
+            owned.addAll(fresh);
+        }
+        NodeHasher hasher = this.hasher;
+        clear();
+        node = result;
+        ownedNodes = owned;
+        this.hasher = hasher;
+        invalidateIndexes("");
+    }
+
+    public long hash() {
+        return hash(null);
+    }
+
+    //content hash: equal for equal documents regardless of fields order and number formatting, 0 for missing paths
+    public long hash(String path) {
+        JsonNode node = get(path);
+        if (node == null) {
+            return 0;
+        }
+        if (tape != null) {
+            //nodes materialized from the tape are not retained, so caching their hashes would not help
+            return new NodeHasher().hash(node);
+        }
+        NodeHasher hasher = this.hasher;
+        if (hasher == null) {
+            hasher = new NodeHasher();
+            this.hasher = hasher;
+        }
+        return hasher.hash(node);
+    }
+
+    private void forgetHash(JsonNode container) {
+        NodeHasher hasher = this.hasher;
+        if (hasher != null) {
+            hasher.forget(container);
+        }
+    }
+
+    //containers along the path are going to be modified in place
+    private void forgetHashes(String path) {
+        NodeHasher hasher = this.hasher;
+        JsonNode current = node;
+        if (hasher == null || current == null) {
+            return;
+        }
+        hasher.forget(current);
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        for (Object segment : JSONEdit.parse(path)) {
+            if (segment instanceof String) {
+                current = current.isObject() ? current.get((String) segment) : null;
+            } else if (segment instanceof Integer) {
+                current = current.isArray() ? current.get((Integer) segment) : null;
+            } else {
+                current = null;
+            }
+            if (current == null) {
+                return;
+            }
+            hasher.forget(current);
+        }
+    }
+
+    public JSONEdit edit() {
+        return new JSONEdit(this);
+    }
+
+    JSON apply(JSONEdit edit) {
+        checkMutable();
+        if (edit.isAtomic()) {
+            //applied to a copy-on-write copy first, so that a failure leaves this document untouched
+            JSON working = copy();
+            working.applyEntries(edit);
+            NodeHasher hasher = this.hasher;
+            clear();
+            node = working.node;
+            ownedNodes = working.ownedNodes;
+            this.hasher = hasher;
+        } else {
+            applyEntries(edit);
+        }
+        for (String path : edit.getPaths()) {
+            invalidateIndexes(path == null ? "" : path);
+        }
+        return this;
+    }
+
+    private void applyEntries(JSONEdit edit) {
+        JSONEdit.Entry root = edit.getRoot();
+        for (JSONEdit.Operation operation : root.operations) {
+            if (!operation.remove) {
+                set(operation.value);
+            }
+        }
+        if (root.children == null) {
+            return;
+        }
+
+        if (root.arrayChildren ? !isArray() : !isObject()) {
+            setRaw(root.arrayChildren ? newArrayNode() : newObjectNode());
+        }
+        JsonNode container = writableContainer(node());
+        node = container;
+        applyChildren(container, root);
+    }
+
+    private void applyChildren(JsonNode container, JSONEdit.Entry entry) {
+        if (container.isObject()) {
+            ObjectNode objectNode = (ObjectNode) container;
+            for (Map.Entry<Object, JSONEdit.Entry> child : entry.children.entrySet()) {
+                String fieldName = (String) child.getKey();
+                JSONEdit.Entry childEntry = child.getValue();
+                for (JSONEdit.Operation operation : childEntry.operations) {
+                    if (!operation.remove) {
+                        objectNode.set(fieldName, insertNode(operation.value));
+                    } else if (operation.value == null || NumericArrayNode.equal(convertToNode(operation.value), objectNode.get(fieldName))) {
+                        objectNode.remove(fieldName);
+                    }
+                }
+                if (childEntry.children != null) {
+                    JsonNode current = objectNode.get(fieldName);
+                    JsonNode target = childContainer(current, childEntry);
+                    if (target != current) {
+                        objectNode.set(fieldName, target);
+                    }
+                    applyChildren(target, childEntry);
+                }
+            }
+            return;
+        }
+
+        //indexes refer to items before the edit, so removals are postponed and done from the last one
+        ArrayNode arrayNode = (ArrayNode) container;
+        Set<Integer> removals = new TreeSet<Integer>(Collections.reverseOrder());
+        for (Map.Entry<Object, JSONEdit.Entry> child : entry.children.entrySet()) {
+            JSONEdit.Entry childEntry = child.getValue();
+            if (child.getKey() instanceof Integer) {
+                int arrayIndex = (Integer) child.getKey();
+                for (JSONEdit.Operation operation : childEntry.operations) {
+                    if (!operation.remove) {
+                        setItem(arrayNode, arrayIndex, insertNode(operation.value));
+                    } else if (arrayIndex < arrayNode.size() && (operation.value == null || NumericArrayNode.equal(convertToNode(operation.value), arrayNode.get(arrayIndex)))) {
+                        removals.add(arrayIndex);
+                    }
+                }
+                if (childEntry.children != null) {
+                    JsonNode current = arrayNode.get(arrayIndex);
+                    JsonNode target = childContainer(current, childEntry);
+                    if (target != current) {
+                        setItem(arrayNode, arrayIndex, target);
+                    }
+                    applyChildren(target, childEntry);
+                }
+            } else {
+                for (JSONEdit.Operation operation : childEntry.operations) {
+                    if (!operation.remove) {
+                        arrayNode.add(insertNode(operation.value));
+                    } else if (operation.value != null) {
+                        int arrayIndex = findIndexOf(arrayNode, operation.value);
+                        if (arrayIndex != -1) {
+                            removals.add(arrayIndex);
+                        }
+                    }
+                }
+                if (childEntry.children != null) {
+                    JsonNode target = childContainer(null, childEntry);
+                    arrayNode.add(target);
+                    applyChildren(target, childEntry);
+                }
+            }
+        }
+        for (int arrayIndex : removals) {
+            arrayNode.remove(arrayIndex);
+        }
+    }
+
+    private static void setItem(ArrayNode arrayNode, int arrayIndex, JsonNode value) {
+        while (arrayNode.size() < arrayIndex) {
+            arrayNode.add(JSON.nullNode());
+        }
+        if (arrayNode.size() == arrayIndex) {
+            arrayNode.add(value);
+        } else {
+            arrayNode.set(arrayIndex, value);
+        }
+    }
+
+    private JsonNode childContainer(JsonNode current, JSONEdit.Entry entry) {
+        if (current == null || current.isNull() || current.isMissingNode()) {
+            JsonNode created = entry.arrayChildren ? newArrayNode() : newObjectNode();
+            if (ownedNodes != null) {
+                ownedNodes.add(created);
+            }
+            return created;
+        }
+        if (entry.arrayChildren ? !current.isArray() : !current.isObject()) {
+            throw new IllegalStateException("Cannot change type of a root node");
+        }
+        return writableContainer(current);
+    }
+
+    private JsonNode writableContainer(JsonNode container) {
+        Set<JsonNode> owned = ownedNodes;
+        if (isWritable(container, owned)) {
+            forgetHash(container);
+            return container;
+        }
+        JsonNode copy = shallowCopy(container);
+        if (owned != null) {
+            owned.add(copy);
+        }
+        return copy;
+    }
+
+    public JSON copy() {
+        if (node == null) {
+            JSON copy = new JSON();
+            copy.localObjectMapper = localObjectMapper;
+            copy.str = str;
+            copy.strFormatting = strFormatting;
+            copy.tape = tape;
+            return copy;
+        }
+
+        //both instances now share the tree, so neither may modify it in place anymore
+        shareTree();
+        JSON copy = new JSON(node);
+        copy.localObjectMapper = localObjectMapper;
+        copy.ownedNodes = newIdentitySet();
+        return copy;
+    }
+
+    public boolean isCopyOnWrite() {
+        return ownedNodes != null;
+    }
+
+    private void shareTree() {
+        if (frozen == null) {
+            ownedNodes = newIdentitySet();
+            modCount++;
+        }
+    }
+
+    private boolean isTreeShared() {
+        return node != null && node.isContainerNode() && (ownedNodes != null || frozen != null);
+    }
+
+    //tree of a copy-on-write or frozen instance stays shared after it is inserted, so neither side modifies it in place
+    private JsonNode insertNode(Object value) {
+        if (value instanceof JSON && value != this) {
+            JSON other = (JSON) value;
+            JsonNode node = other.node();
+            if (other.isTreeShared()) {
+                other.shareTree();
+                if (ownedNodes == null) {
+                    shareTree();
+                }
+            }
+            return node;
+        }
+        return convertToNode(value);
+    }
+
+    private static Set<JsonNode> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<JsonNode, Boolean>());
+    }
+
+    private void prepareWritePath(String path, boolean beforeWrite) {
+        //before write: copies shared or read-only containers along the path (excluding target) and relinks them
+        //after write: marks containers created along the path as owned
+        if (beforeWrite && path != null) {
+            //numeric arrays along the path are expanded only in a materialized tree
+            node();
+        }
+        Set<JsonNode> owned = ownedNodes;
+        if ((owned == null && !beforeWrite) || path == null || node == null || !node.isContainerNode()) {
+            return;
+        }
+
+        JsonNode current = node;
+        if (!isWritable(current, owned)) {
+            if (beforeWrite) {
+                current = shallowCopy(current);
+                node = current;
+            }
+            if (owned != null) {
+                owned.add(current);
+            }
+        }
+        prepareWritePath(current, path, beforeWrite, owned);
+    }
+
+    private void prepareWritePath(JsonNode current, String path, boolean beforeWrite, Set<JsonNode> owned) {
+        if (beforeWrite) {
+            forgetHash(current);
+        }
+        int pos = 0;
+        while (pos < path.length()) {
+            String fieldName = null;
+            int arrayIndex = -1;
+            int end;
+            if (path.charAt(pos) == '[') {
+                end = path.indexOf(']', pos);
+                if (end == -1) {
+                    return;
+                }
+                String indexer = path.substring(pos + 1, end);
+                end++;
+                if (indexer.isEmpty()) {
+                    if (beforeWrite || !current.isArray() || current.size() == 0) {
+                        return;
+                    }
+                    arrayIndex = current.size() - 1;
+                } else {
+                    try {
+                        arrayIndex = Integer.parseInt(indexer);
+                    } catch (NumberFormatException notInteger) {
+                        return;
+                    }
+                }
+            } else {
+                int nextDot = path.indexOf('.', pos + 1);
+                int nextIndexer = path.indexOf('[', pos + 1);
+                end = path.length();
+                if (nextDot != -1) {
+                    end = nextDot;
+                }
+                if (nextIndexer != -1 && nextIndexer < end) {
+                    end = nextIndexer;
+                }
+                fieldName = path.substring(pos, end);
+            }
+
+            if (end >= path.length()) {
+                return;
+            }
+
+            JsonNode child;
+            if (fieldName != null) {
+                child = current.isObject() ? current.get(fieldName) : null;
+            } else {
+                child = current.isArray() ? current.get(arrayIndex) : null;
+            }
+            if (child == null || !child.isContainerNode()) {
+                return;
+            }
+
+            if (!isWritable(child, owned)) {
+                if (beforeWrite) {
+                    child = shallowCopy(child);
+                    if (fieldName != null) {
+                        ((ObjectNode) current).set(fieldName, child);
+                    } else {
+                        ((ArrayNode) current).set(arrayIndex, child);
+                    }
+                }
+                if (owned != null) {
+                    owned.add(child);
+                }
+            }
+
+            current = child;
+            if (beforeWrite) {
+                forgetHash(current);
+            }
+            pos = end;
+            if (path.charAt(pos) == '.') {
+                pos++;
+            }
+        }
+    }
+
+    private static boolean isWritable(JsonNode container, Set<JsonNode> owned) {
+        return !(container instanceof NumericArrayNode) && (owned == null || owned.contains(container));
+    }
+
+    private JsonNode shallowCopy(JsonNode container) {
+        if (container instanceof NumericArrayNode) {
+            return ((NumericArrayNode) container).toArrayNode(getObjectMapper().getNodeFactory());
+        }
+        if (container.isObject()) {
+            ObjectNode copy = getObjectMapper().createObjectNode();
+            copy.setAll((ObjectNode) container);
+            return copy;
+        } else {
+            ArrayNode copy = getObjectMapper().createArrayNode();
+            copy.addAll((ArrayNode) container);
+            return copy;
+        }
+    }
+
+    private void unshare() {
+        if (ownedNodes != null) {
+            node = node.deepCopy();
+            ownedNodes = null;
+            modCount++;
+        }
+    }
+
+    private JsonNode resolvePath(JsonNode node, String path, Operation operation, Object value) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        if (path == null || path.isEmpty()) {
+            return node;
+        }
+        if (path.startsWith(".") || path.endsWith(".") || path.startsWith("]") || path.endsWith("[")) {
+            throw new IllegalArgumentException("Malformed JSON path");
+        }
+
+        JsonNode result = null;
         int nextDot = path.indexOf('.', 1);
         int nextIndexer = path.indexOf('[', 1);
         int next;
@@ -510,11 +1587,11 @@ public final class JSON implements Serializable, Cloneable {
                             if (value != null) {
                                 JsonNode valueNode = convertToNode(value);
                                 if (indexer.isEmpty()) {
-                                    arrayIndex = findIndexOf((ArrayNode)node, value);
+                                    arrayIndex = findIndexOf(node, value);
                                     remove = arrayIndex != -1;
                                 } else {
                                     JsonNode arrayItemNode = node.get(arrayIndex);
-                                    remove = valueNode.equals(arrayItemNode);
+                                    remove = NumericArrayNode.equal(valueNode, arrayItemNode);
                                 }
                             }
 
@@ -526,7 +1603,7 @@ public final class JSON implements Serializable, Cloneable {
                                 ((ArrayNode) node).add(JSON.nullNode());
                             }
                             if (isTarget) {
-                                result = convertToNode(value);
+                                result = insertNode(value);
                             } else if (isObject) {
                                 result = node.get(arrayIndex);
                                 if (result == null || !result.isObject()) {
@@ -574,14 +1651,14 @@ public final class JSON implements Serializable, Cloneable {
                         if (value != null) {
                             JsonNode valueNode = convertToNode(value);
                             JsonNode objectFieldNode = node.get(fieldName);
-                            remove = valueNode.equals(objectFieldNode);
+                            remove = NumericArrayNode.equal(valueNode, objectFieldNode);
                         }
                         if (remove) {
                             ((ObjectNode) node).remove(fieldName);
                         }
                         result = node;
                     } else {
-                        result = convertToNode(value);
+                        result = insertNode(value);
                         ((ObjectNode) node).set(fieldName, result);
                     }
                 }
@@ -611,7 +1688,10 @@ public final class JSON implements Serializable, Cloneable {
         if (value instanceof JSON) {
             return ((JSON) value).node();
         }
-        return getObjectMapper().valueToTree(value);
+        long started = metricsStart();
+        JsonNode node = getObjectMapper().valueToTree(value);
+        metricsRecord(JSONMetrics.Kind.ValueToTree, started, 0);
+        return node;
     }
 
     @Override
@@ -625,52 +1705,175 @@ public final class JSON implements Serializable, Cloneable {
 
     public JsonNode node() {
         if (node == null) {
-            if (str != null && !str.isEmpty()) {
+            long eventStarted = eventStart(JSONEvent.Type.Parse);
+            StorageType storageType = getCurrentStorageType();
+            long size = str != null ? str.length() : -1;
+            if (tape != null) {
+                long started = metricsStart();
+                node = tape.toNode(0, getObjectMapper().getNodeFactory());
+                tape = null;
+                metricsRecord(JSONMetrics.Kind.TapeToTree, started, 0);
+            } else if (str != null && !str.isEmpty()) {
                 if (str.equals("{}")) {
                     node = getObjectMapper().createObjectNode();
                 } else if (str.equals("[]")) {
                     node = getObjectMapper().createArrayNode();
                 } else {
-                    try {
-                        node = getObjectMapper().readTree(str);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                    JSONParseCache cache = parseCache;
+                    if (cache != null && localObjectMapper == null) {
+                        parseShared(cache);
+                    } else {
+                        node = readTree(str);
                     }
                 }
             } else {
                 node = nullNode();
             }
             str = null;
+            eventEnd(JSONEvent.Type.Parse, eventStarted, size, storageType, null, null, null);
         }
         return node;
     }
 
+    //tree of a cached document is shared with the cache, so it is copied on write
+    private JSON parseShared(JSONParseCache cache) {
+        JSON document = cache.getDocument(str);
+        if (document != null) {
+            node = document.node;
+        } else {
+            node = readTree(str);
+            document = cache.putDocument(str, node);
+        }
+        if (document != null) {
+            ownedNodes = newIdentitySet();
+        }
+        return document;
+    }
+
+    public JsonNode node(JSONProjection projection) {
+        try {
+            JsonParser parser = valueParser(null);
+            if (parser == null) {
+                return nullNode();
+            }
+            try {
+                JsonNode projected = projection.read(parser, getObjectMapper(), numericArrayThreshold);
+                return projected != null ? projected : nullNode();
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public JSON project(JSONProjection projection) {
+        JSON projected = new JSON(node(projection));
+        projected.localObjectMapper = localObjectMapper;
+        return projected;
+    }
+
+    public JSON project(String... paths) {
+        return project(JSONProjection.compile(paths));
+    }
+
     public ObjectNode nodeObject() {
+        //tree modified directly cannot be tracked by cached hashes
+        hasher = null;
+        unshare();
         if (node == null) {
-            if (str != null) {
-                return (ObjectNode) node();
+            if (str != null || tape != null) {
+                node();
             } else {
                 node = getObjectMapper().createObjectNode();
             }
         }
+        expandNumericArrays(node);
         return (ObjectNode) node;
     }
 
     public ArrayNode nodeArray() {
+        hasher = null;
+        unshare();
         if (node == null) {
-            if (str != null) {
-                return (ArrayNode) node();
+            if (str != null || tape != null) {
+                node();
             } else {
                 node = getObjectMapper().createArrayNode();
             }
         }
+        if (node instanceof NumericArrayNode) {
+            node = shallowCopy(node);
+            modCount++;
+        }
+        expandNumericArrays(node);
         return (ArrayNode) node;
     }
 
+    //tree handed out for direct modification holds regular array nodes only
+    private void expandNumericArrays(JsonNode container) {
+        if (container instanceof ObjectNode) {
+            Iterator<Map.Entry<String, JsonNode>> fields = container.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue() instanceof NumericArrayNode) {
+                    field.setValue(shallowCopy(field.getValue()));
+                    modCount++;
+                } else {
+                    expandNumericArrays(field.getValue());
+                }
+            }
+        } else if (container instanceof ArrayNode) {
+            ArrayNode arrayNode = (ArrayNode) container;
+            for (int i = 0; i < arrayNode.size(); i++) {
+                if (arrayNode.get(i) instanceof NumericArrayNode) {
+                    arrayNode.set(i, shallowCopy(arrayNode.get(i)));
+                    modCount++;
+                } else {
+                    expandNumericArrays(arrayNode.get(i));
+                }
+            }
+        }
+    }
+
+    private JsonNode readTree(String jsonString) {
+        long started = metricsStart();
+        JsonNode node;
+        if (numericArrayThreshold > 0) {
+            node = readTree(jsonString, numericArrayThreshold);
+        } else {
+            try {
+                node = getObjectMapper().readTree(jsonString);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        metricsRecord(JSONMetrics.Kind.Parse, started, jsonString.length());
+        return node;
+    }
+
+    private JsonNode readTree(String jsonString, int numericArrayThreshold) {
+        ObjectMapper objectMapper = getObjectMapper();
+        try {
+            JsonParser parser = objectMapper.getFactory().createParser(jsonString);
+            try {
+                JsonNode node = new NodeTreeReader(objectMapper, null, numericArrayThreshold).read(parser);
+                return node != null ? node : nullNode();
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public StorageType getCurrentStorageType() {
         if (str != null) {
             return StorageType.String;
         }
+        if (tape != null) {
+            return StorageType.Tape;
+        }
         if (node != null) {
             return StorageType.NodeTree;
         }
@@ -682,7 +1885,7 @@ public final class JSON implements Serializable, Cloneable {
         if (getCurrentStorageType() == StorageType.String) {
             objectNode.putRawValue(fieldName, new RawValue(toString()));
         } else {
-            objectNode.set(fieldName, node());
+            objectNode.set(fieldName, appendedNode());
         }
     }
 
@@ -690,8 +1893,153 @@ public final class JSON implements Serializable, Cloneable {
         if (getCurrentStorageType() == StorageType.String) {
             arrayNode.addRawValue(new RawValue(toString()));
         } else {
-            arrayNode.add(node());
+            arrayNode.add(appendedNode());
+        }
+    }
+
+    //foreign trees are modified in place, so a shared tree is appended as a copy
+    private JsonNode appendedNode() {
+        JsonNode node = node();
+        return isTreeShared() ? node.deepCopy() : node;
+    }
+
+    public void writeTo(JsonGenerator generator) throws IOException {
+        if (tape != null) {
+            tape.write(generator, 0);
+        } else if (node == null && str != null) {
+            verifyFragment();
+            if (generator instanceof JsonGeneratorImpl) {
+                generator.writeRawValue(str);
+            } else {
+                //binary and buffering generators do not accept raw text, so tokens are copied instead
+                JsonParser parser = parser();
+                try {
+                    parser.nextToken();
+                    generator.copyCurrentStructure(parser);
+                } finally {
+                    parser.close();
+                }
+            }
+        } else {
+            generator.writeTree(node());
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, Format.Text);
+    }
+
+    public void writeTo(OutputStream out, Format format) throws IOException {
+        if (format == null || format == Format.Text) {
+            out.write(toStringCompact().getBytes(DEFAULT_CHARSET));
+            return;
+        }
+
+        JsonGenerator generator = getFormatObjectMapper(format).getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        writeTo(generator);
+        generator.close();
+    }
+
+    public void writeTo(OutputStream out, Formatting formatting) throws IOException {
+        if (formatting == Formatting.Canonical && !(str != null && strFormatting == Formatting.Canonical) && frozen == null) {
+            //streamed to the output without building the whole string first
+            JsonNode node = node();
+            long started = metricsStart();
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, DEFAULT_CHARSET));
+            new CanonicalWriter(getObjectMapper(), writer).write(node);
+            writer.flush();
+            metricsRecord(JSONMetrics.Kind.Canonicalize, started, 0);
+            return;
+        }
+        out.write(toString(formatting).getBytes(DEFAULT_CHARSET));
+    }
+
+    public byte[] toBytes() {
+        return toBytes(Format.Text);
+    }
+
+    public byte[] toBytes(Format format) {
+        if (format == null || format == Format.Text) {
+            return toStringCompact().getBytes(DEFAULT_CHARSET);
+        }
+
+        BuilderOutputStream out = new BuilderOutputStream();
+        try {
+            writeTo(out, format);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private boolean isPassThroughCompatible(JsonGenerator generator) {
+        if (node != null || str == null || str.isEmpty()) {
+            return false;
+        }
+        //only text JSON generators accept raw values as-is (i.e. TokenBuffer would wrap them as POJOs)
+        if (!(generator instanceof JsonGeneratorImpl) || generator.isEnabled(JsonGenerator.Feature.ESCAPE_NON_ASCII)) {
+            return false;
+        }
+
+        if (strFormatting == null || strFormatting == Formatting.Unknown) {
+            if (isCompactString(str)) {
+                strFormatting = Formatting.Compact;
+            } else {
+                return false;
+            }
+        }
+
+        if (generator.getPrettyPrinter() == null) {
+            return strFormatting == Formatting.Compact || strFormatting == Formatting.Canonical;
+        } else {
+            return strFormatting == Formatting.Pretty && generator.getOutputContext().inRoot();
+        }
+    }
+
+    private static boolean isCompactString(String s) {
+        boolean inString = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void verifyFragment() {
+        FragmentVerification verification = fragmentVerification;
+        if (verification == FragmentVerification.None || (verification == FragmentVerification.Once && fragmentVerified)) {
+            return;
+        }
+
+        boolean valid;
+        try {
+            JsonParser parser = getObjectMapper().getFactory().createParser(str);
+            try {
+                valid = parser.nextToken() != null;
+                parser.skipChildren();
+                valid = valid && parser.nextToken() == null;
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            valid = false;
+        }
+
+        if (!valid) {
+            throw new IllegalStateException("Provided JSON fragment is invalid");
         }
+        fragmentVerified = true;
     }
 
     public JSON setRaw(String json) {
@@ -735,23 +2083,49 @@ public final class JSON implements Serializable, Cloneable {
         if (other.str != null) {
             this.str = other.str;
             this.strFormatting = other.strFormatting;
+        } else if (other.tape != null) {
+            this.tape = other.tape;
         } else if (other.node != null) {
             if (deepCopy) {
                 this.node = other.node.deepCopy();
             } else {
                 this.node = other.node;
+                if (other != this && other.isTreeShared()) {
+                    other.shareTree();
+                    shareTree();
+                }
             }
         }
         return this;
     }
 
     public String toStringCompact() {
-        if (str != null && strFormatting == Formatting.Compact) {
+        Frozen frozen = this.frozen;
+        if (frozen != null) {
+            return frozen.compact;
+        }
+
+        if (str != null && (strFormatting == Formatting.Compact || strFormatting == Formatting.Canonical)) {
             return str;
         }
 
-        if (node != null) {
-            return node.toString();
+        if (str != null) {
+            if (strFormatting != Formatting.Pretty && isCompactString(str)) {
+                strFormatting = Formatting.Compact;
+                return str;
+            }
+            //whitespace of a pretty or spliced string is dropped by copying its tokens, so it stays string-backed
+            return writeCompact();
+        }
+
+        if (node != null || tape != null) {
+            long started = metricsStart();
+            long eventStarted = eventStart(JSONEvent.Type.Serialize);
+            StorageType storageType = node != null ? StorageType.NodeTree : StorageType.Tape;
+            String serialized = node != null ? node.toString() : tape.toString();
+            metricsRecord(JSONMetrics.Kind.Serialize, started, serialized.length());
+            eventEnd(JSONEvent.Type.Serialize, eventStarted, serialized.length(), storageType, Formatting.Compact, null, null);
+            return serialized;
         } else {
             if (str == null) {
                 return "null";
@@ -762,11 +2136,87 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     public String toStringPretty() {
+        Frozen frozen = this.frozen;
+        if (frozen != null) {
+            String pretty = frozen.pretty;
+            if (pretty == null) {
+                pretty = writePretty();
+                frozen.pretty = pretty;
+            }
+            return pretty;
+        }
+
         if (str != null && strFormatting == Formatting.Pretty) {
             return str;
         }
+        return writePretty();
+    }
+
+    public String toStringCanonical() {
+        Frozen frozen = this.frozen;
+        if (frozen != null) {
+            String canonical = frozen.canonical;
+            if (canonical == null) {
+                canonical = writeCanonical();
+                frozen.canonical = canonical;
+            }
+            return canonical;
+        }
+
+        if (str != null && strFormatting == Formatting.Canonical) {
+            return str;
+        }
+        return writeCanonical();
+    }
+
+    private String writeCanonical() {
+        JsonNode node = node();
+        long metricsStarted = metricsStart();
+        long started = eventStart(JSONEvent.Type.Serialize);
+        StringBuilder out = new StringBuilder();
+        try {
+            new CanonicalWriter(getObjectMapper(), out).write(node);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        metricsRecord(JSONMetrics.Kind.Canonicalize, metricsStarted, out.length());
+        eventEnd(JSONEvent.Type.Serialize, started, out.length(), StorageType.NodeTree, Formatting.Canonical, null, null);
+        return out.toString();
+    }
+
+    private String writeCompact() {
+        long started = metricsStart();
+        long eventStarted = eventStart(JSONEvent.Type.Serialize);
+        try {
+            StringWriter writer = new StringWriter(str.length());
+            JsonParser parser = parser();
+            try {
+                JsonGenerator generator = getObjectMapper().getFactory().createGenerator(writer);
+                while (parser.nextToken() != null) {
+                    generator.copyCurrentStructure(parser);
+                }
+                generator.close();
+            } finally {
+                parser.close();
+            }
+            String compact = writer.toString();
+            metricsRecord(JSONMetrics.Kind.Serialize, started, compact.length());
+            eventEnd(JSONEvent.Type.Serialize, eventStarted, compact.length(), StorageType.String, Formatting.Compact, null, null);
+            return compact;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String writePretty() {
+        JsonNode node = node();
+        long started = metricsStart();
+        long eventStarted = eventStart(JSONEvent.Type.Serialize);
         try {
-            return getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(node());
+            String pretty = getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(node);
+            metricsRecord(JSONMetrics.Kind.PrettyPrint, started, pretty.length());
+            eventEnd(JSONEvent.Type.Serialize, eventStarted, pretty.length(), StorageType.NodeTree, Formatting.Pretty, null, null);
+            return pretty;
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -781,9 +2231,33 @@ public final class JSON implements Serializable, Cloneable {
             return null;
         }
 
+        long started = eventStart(JSONEvent.Type.Deserialize);
+        if (started == 0L) {
+            return deserializeValue(clazz);
+        }
+        StorageType storageType = getCurrentStorageType();
+        long size = str != null ? str.length() : -1;
+        T value = deserializeValue(clazz);
+        eventEnd(JSONEvent.Type.Deserialize, started, size, storageType, null, clazz, null);
+        return value;
+    }
+
+    private <T> T deserializeValue(Class<? extends T> clazz) {
         if (str != null) {
+            JSONParseCache cache = parseCache;
+            boolean cacheable = cache != null && localObjectMapper == null && cache.isImmutable(clazz);
+            if (cacheable) {
+                Object cached = cache.getValue(str, clazz);
+                if (cached != null) {
+                    return clazz.cast(cached);
+                }
+            }
             try {
-                return getObjectMapper().readValue(parser(), clazz);
+                T value = getObjectMapper().readValue(parser(), clazz);
+                if (cacheable && value != null) {
+                    cache.putValue(str, clazz, value);
+                }
+                return value;
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -795,6 +2269,16 @@ public final class JSON implements Serializable, Cloneable {
                 throw new RuntimeException(e);
             }
         }
+        if (tape != null) {
+            try {
+                //replays the tape as tokens, so that no tree is materialized
+                TokenBuffer buffer = new TokenBuffer(getObjectMapper(), false);
+                tape.write(buffer, 0);
+                return getObjectMapper().readValue(buffer.asParser(), clazz);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
 
         return null;
     }
@@ -815,10 +2299,16 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     public boolean isNull() {
+        if (tape != null) {
+            return tape.isNull(0);
+        }
         return (node == null && (str == null || str.isEmpty() || str.equals("null"))) || (node != null && node.isNull());
     }
 
     public boolean isObject() {
+        if (tape != null) {
+            return tape.type(0) == JSONTape.TYPE_OBJECT;
+        }
         if (node != null) {
             return node.isObject();
         } else {
@@ -827,6 +2317,9 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     public boolean isArray() {
+        if (tape != null) {
+            return tape.type(0) == JSONTape.TYPE_ARRAY;
+        }
         if (node != null) {
             return node.isArray();
         } else {
@@ -835,6 +2328,10 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     public boolean isPrimitive() {
+        if (tape != null) {
+            int type = tape.type(0);
+            return type != JSONTape.TYPE_OBJECT && type != JSONTape.TYPE_ARRAY && type != JSONTape.TYPE_NULL;
+        }
         if (node != null) {
             return !node.isArray() && !node.isObject() && !node.isNull();
         } else {
@@ -861,6 +2358,9 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     public boolean isValid() {
+        if (tape != null) {
+            return true;
+        }
         if (node != null) {
             if (str == null || str.isEmpty()) {
                 return false;
@@ -907,10 +2407,43 @@ public final class JSON implements Serializable, Cloneable {
         return toStringCompact().hashCode();
     }
 
+    public JSON freeze() {
+        if (frozen == null) {
+            synchronized (this) {
+                if (frozen == null) {
+                    JsonNode materialized = node();
+                    frozen = new Frozen(materialized.toString());
+                }
+            }
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen != null;
+    }
+
+    private void checkMutable() {
+        if (frozen != null) {
+            throw new UnsupportedOperationException("JSON is frozen");
+        }
+        //every modification passes here, cursors compare the counter to detect stale containers
+        modCount++;
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
     public JSON clear() {
+        checkMutable();
         str = null;
         strFormatting = null;
         node = null;
+        tape = null;
+        fragmentVerified = false;
+        ownedNodes = null;
+        hasher = null;
         return this;
     }
 
@@ -919,6 +2452,9 @@ public final class JSON implements Serializable, Cloneable {
         if (str != null) {
             return str;
         }
+        if (tape != null) {
+            return toStringCompact();
+        }
 
         return toStringPretty();
     }
@@ -933,16 +2469,19 @@ public final class JSON implements Serializable, Cloneable {
         if (formatting == Formatting.Pretty) {
             return toStringPretty();
         }
+        if (formatting == Formatting.Canonical) {
+            return toStringCanonical();
+        }
 
         throw new IllegalArgumentException("Unsupported formatting value");
     }
 
 
-    private int findIndexOf(ArrayNode arrayNode, Object value) {
+    private int findIndexOf(JsonNode arrayNode, Object value) {
         JsonNode valueNode = convertToNode(value);
         for (int i = 0; i < arrayNode.size(); i++) {
             JsonNode arrayItemNode = arrayNode.get(i);
-            if (valueNode.equals(arrayItemNode)) {
+            if (NumericArrayNode.equal(valueNode, arrayItemNode)) {
                 return i;
             }
         }
@@ -950,29 +2489,80 @@ public final class JSON implements Serializable, Cloneable {
     }
 
     private void writeObject(ObjectOutputStream stream) throws IOException {
-        int formattingOrdinal = Formatting.Unknown.ordinal();
-
-        String jsonString = str;
-        if (jsonString == null) {
-            formattingOrdinal = Formatting.Compact.ordinal();
-            jsonString = toStringCompact();
+        //format marker, distinguishable from the legacy leading formatting ordinal
+        stream.writeByte(SERIAL_FORMAT_MARKER);
+        stream.writeByte(SERIAL_FORMAT_VERSION);
+
+        byte[] body;
+        if (str != null || tape != null) {
+            Formatting formatting = strFormatting != null ? strFormatting : Formatting.Unknown;
+            if (formatting == Formatting.Canonical) {
+                //canonical text is compact as well, older readers do not know the newer ordinal
+                formatting = Formatting.Compact;
+            }
+            String text = str;
+            if (text == null) {
+                formatting = Formatting.Compact;
+                text = tape.toString();
+            }
+            stream.writeByte(SERIAL_BODY_TEXT);
+            stream.writeByte((byte) formatting.ordinal());
+            body = text.getBytes(DEFAULT_CHARSET);
         } else {
-            if (strFormatting != null) {
-                formattingOrdinal = strFormatting.ordinal();
-            }
+            stream.writeByte(SERIAL_BODY_BINARY);
+            body = NodeBinaryCodec.encode(node);
         }
 
-        //formatting mark
-        stream.writeByte((byte) formattingOrdinal);
-
-        //JSON string
-        stream.writeUTF(jsonString);
+        stream.writeInt(body.length);
+        stream.write(body);
     }
 
     private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        int marker = stream.readByte();
+        if (marker != SERIAL_FORMAT_MARKER) {
+            readObjectLegacy(marker, stream);
+            return;
+        }
+
+        int version = stream.readByte();
+        if (version != SERIAL_FORMAT_VERSION) {
+            throw new InvalidObjectException("Unsupported JSON serialization format version: " + version);
+        }
+
+        int bodyType = stream.readByte();
+        Formatting formatting = null;
+        if (bodyType == SERIAL_BODY_TEXT) {
+            formatting = readFormatting(stream.readByte());
+        } else if (bodyType != SERIAL_BODY_BINARY) {
+            throw new InvalidObjectException("Unsupported JSON serialization body type: " + bodyType);
+        }
+
+        int length = stream.readInt();
+        if (length < 0) {
+            throw new InvalidObjectException("Invalid JSON serialization body length");
+        }
+        byte[] body = new byte[length];
+        stream.readFully(body);
+
+        if (formatting != null) {
+            this.str = new String(body, DEFAULT_CHARSET);
+            this.strFormatting = formatting;
+        } else {
+            this.node = NodeBinaryCodec.decode(body, getDefaultObjectMapper());
+        }
+    }
+
+    private static Formatting readFormatting(int ordinal) throws InvalidObjectException {
+        Formatting[] values = Formatting.values();
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new InvalidObjectException("Unsupported JSON serialization formatting: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private void readObjectLegacy(int ordinal, ObjectInputStream stream) throws IOException {
         //formatting mark
-        int ordinal = stream.readByte();
-        this.strFormatting = Formatting.values()[ordinal];
+        this.strFormatting = readFormatting(ordinal);
 
         //JSON string
         this.str = stream.readUTF();
@@ -985,7 +2575,21 @@ public final class JSON implements Serializable, Cloneable {
             if (jsonGenerator.getCodec() == null) {
                 jsonGenerator.setCodec(getDefaultObjectMapper());
             }
-            jsonGenerator.getCodec().writeTree(jsonGenerator, json.node());
+            if (json.isPassThroughCompatible(jsonGenerator)) {
+                json.writeTo(jsonGenerator);
+            } else {
+                jsonGenerator.getCodec().writeTree(jsonGenerator, json.node());
+            }
+        }
+    }
+
+    public static class RawSerializer extends JsonSerializer<JSON> {
+        @Override
+        public void serialize(JSON json, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException, JsonProcessingException {
+            if (jsonGenerator.getCodec() == null) {
+                jsonGenerator.setCodec(getDefaultObjectMapper());
+            }
+            json.writeTo(jsonGenerator);
         }
     }
 
@@ -1000,6 +2604,17 @@ public final class JSON implements Serializable, Cloneable {
         }
     }
 
+    public static class RawDeserializer extends JsonDeserializer<JSON> {
+        @Override
+        public JSON deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            StringWriter out = new StringWriter();
+            JsonGenerator generator = getDefaultObjectMapper().getFactory().createGenerator(out);
+            generator.copyCurrentStructure(jsonParser);
+            generator.close();
+            return new JSON(out.toString(), Formatting.Compact);
+        }
+    }
+
 
     public interface BuilderObject<TParent> {
         BuilderObject<TParent> fieldNull(String fieldName);
@@ -1036,6 +2651,40 @@ public final class JSON implements Serializable, Cloneable {
 
         BuilderArray<BuilderObject<TParent>> startArray(String fieldName);
 
+        BuilderObject<TParent> fieldNull(JSONName fieldName);
+
+        BuilderObject<TParent> field(JSONName fieldName, byte v);
+
+        BuilderObject<TParent> field(JSONName fieldName, short v);
+
+        BuilderObject<TParent> field(JSONName fieldName, int v);
+
+        BuilderObject<TParent> field(JSONName fieldName, long v);
+
+        BuilderObject<TParent> field(JSONName fieldName, float v);
+
+        BuilderObject<TParent> field(JSONName fieldName, double v);
+
+        BuilderObject<TParent> field(JSONName fieldName, BigDecimal v);
+
+        BuilderObject<TParent> field(JSONName fieldName, String v);
+
+        BuilderObject<TParent> field(JSONName fieldName, boolean v);
+
+        BuilderObject<TParent> field(JSONName fieldName, byte[] data);
+
+        BuilderObject<TParent> field(JSONName fieldName, byte[] data, int offset, int length);
+
+        BuilderObject<TParent> field(JSONName fieldName, Object o);
+
+        BuilderObject<TParent> field(JSONName fieldName, TreeNode node);
+
+        BuilderObject<TParent> field(JSONName fieldName, JSON json);
+
+        BuilderObject<BuilderObject<TParent>> startObject(JSONName fieldName);
+
+        BuilderArray<BuilderObject<TParent>> startArray(JSONName fieldName);
+
         TParent endObject();
     }
 
@@ -1081,6 +2730,8 @@ public final class JSON implements Serializable, Cloneable {
 
     public interface BuilderTerminate {
         JSON build();
+
+        byte[] buildBytes();
     }
 
     public interface BuilderRoot {
@@ -1125,9 +2776,15 @@ public final class JSON implements Serializable, Cloneable {
     @JsonDeserialize(using = Builder.Deserializer.class)
     public static final class Builder implements BuilderRoot, BuilderObject, BuilderArray, BuilderTerminate {
 
-        private ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private BuilderOutputStream out = new BuilderOutputStream();
         private JsonGenerator generator;
+        private ObjectMapper objectMapper;
+        private Format format;
+        private Formatting initialFormatting;
         private Formatting formatting;
+        private boolean canonical;
+        private boolean pooled;
+        private boolean inUse;
 
         public Builder() {
             this(Formatting.Compact);
@@ -1137,26 +2794,76 @@ public final class JSON implements Serializable, Cloneable {
             this(null, formatting);
         }
 
-        public Builder(ObjectMapper objectMapper, Formatting formatting) {
-            if (objectMapper != null) {
+        public Builder(ObjectMapper objectMapper, Formatting formatting) {
+            this(objectMapper, formatting, Format.Text);
+        }
+
+        public Builder(ObjectMapper objectMapper, Formatting formatting, Format format) {
+            this.objectMapper = objectMapper;
+            this.format = format != null ? format : Format.Text;
+            init(formatting);
+        }
+
+        private void init(Formatting formatting) {
+            if (format != Format.Text) {
+                try {
+                    generator = getFormatObjectMapper(format).getFactory().createGenerator(out);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            } else if (objectMapper != null) {
                 generator = generator(objectMapper, out);
             } else {
                 generator = generator(out);
             }
 
-            if (formatting == Formatting.Pretty) {
+            if (formatting == Formatting.Pretty && format == Format.Text) {
                 this.formatting = Formatting.Pretty;
                 generator.useDefaultPrettyPrinter();
             } else {
                 this.formatting = Formatting.Compact;
             }
+            //written compact, fields are sorted and numbers normalized when built
+            canonical = formatting == Formatting.Canonical && format == Format.Text;
+            this.initialFormatting = canonical ? Formatting.Canonical : this.formatting;
+        }
+
+        public Builder reset() {
+            return reset(initialFormatting);
+        }
+
+        public Builder reset(Formatting formatting) {
+            if (generator != null) {
+                try {
+                    generator.close();
+                } catch (IOException ignore) {
+                }
+                generator = null;
+            }
+
+            if (out.capacity() > pooledBuilderMaxRetainedBufferSize) {
+                out = new BuilderOutputStream();
+            } else {
+                out.reset();
+            }
+
+            init(formatting);
+            return this;
+        }
+
+        public boolean isPooled() {
+            return pooled;
+        }
+
+        public Format getFormat() {
+            return format;
         }
 
         public Builder startObject() {
             try {
                 generator.writeStartObject();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1165,7 +2872,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeEndObject();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1174,7 +2881,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeStartArray();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1183,7 +2890,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeArrayFieldStart(fieldName);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1192,7 +2899,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeEndArray();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1201,7 +2908,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNullField(fieldName);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1210,7 +2917,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumberField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1219,7 +2926,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumberField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1228,7 +2935,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumberField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1237,7 +2944,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumberField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1247,7 +2954,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumberField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1256,7 +2963,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumberField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1269,7 +2976,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeNumberField(fieldName, v);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1282,7 +2989,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeStringField(fieldName, v);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1291,7 +2998,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeBooleanField(fieldName, v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1300,7 +3007,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeBinaryField(fieldName, data);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1310,7 +3017,7 @@ public final class JSON implements Serializable, Cloneable {
                 generator.writeFieldName(fieldName);
                 generator.writeBinary(data, offset, length);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1323,7 +3030,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeObjectField(fieldName, o);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1332,7 +3039,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeObjectFieldStart(fieldName);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1346,7 +3053,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeTree(node);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1357,18 +3064,200 @@ public final class JSON implements Serializable, Cloneable {
                 if (json == null) {
                     generator.writeNull();
                 } else {
-                    if (json.node != null) {
-                        generator.writeTree(json.node);
-                    } else {
-                        generator.writeRawValue(json.toString());
+                    splice(json);
+                }
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
 
-                        if (this.formatting == Formatting.Pretty || this.formatting != json.strFormatting) {
-                            this.formatting = Formatting.Unknown;
-                        }
-                    }
+        public Builder fieldNull(JSONName fieldName) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNull();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, byte v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNumber(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, short v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNumber(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, int v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNumber(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, long v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNumber(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, float v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNumber(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, double v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeNumber(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, BigDecimal v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                if (v == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(v);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, String v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                if (v == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeString(v);
+                }
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, boolean v) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeBoolean(v);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, byte[] data) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeBinary(data);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, byte[] data, int offset, int length) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeBinary(data, offset, length);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, Object o) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                if (o == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeObject(o);
+                }
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, TreeNode node) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                if (node == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeTree(node);
+                }
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder field(JSONName fieldName, JSON json) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                if (json == null) {
+                    generator.writeNull();
+                } else {
+                    splice(json);
+                }
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder startObject(JSONName fieldName) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeStartObject();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            return this;
+        }
+
+        public Builder startArray(JSONName fieldName) {
+            try {
+                generator.writeFieldName(fieldName.asSerializableString());
+                generator.writeStartArray();
+            } catch (IOException e) {
+                throw failed(e);
             }
             return this;
         }
@@ -1377,7 +3266,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNull();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1386,7 +3275,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumber(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1395,7 +3284,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumber(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1404,7 +3293,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumber(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1413,7 +3302,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumber(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1422,7 +3311,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumber(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1431,7 +3320,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeNumber(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1444,7 +3333,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeNumber(v);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1457,7 +3346,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeNumber(v);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1470,7 +3359,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeString(v);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1479,7 +3368,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeBoolean(v);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1488,7 +3377,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeBinary(data);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1497,7 +3386,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeBinary(data, offset, length);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1510,7 +3399,7 @@ public final class JSON implements Serializable, Cloneable {
                     generator.writeObject(o);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1519,7 +3408,7 @@ public final class JSON implements Serializable, Cloneable {
             try {
                 generator.writeTree(node);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
@@ -1529,28 +3418,88 @@ public final class JSON implements Serializable, Cloneable {
                 if (json == null) {
                     generator.writeNull();
                 } else {
-                    if (json.node != null) {
-                        generator.writeTree(json.node);
-                    } else {
-                        generator.writeRawValue(json.toString());
-                    }
+                    splice(json);
                 }
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
             }
             return this;
         }
 
+        private void splice(JSON json) throws IOException {
+            if (json.node == null && json.str != null) {
+                //raw text is copied as it is, so built string is no longer known to be compact or pretty
+                if (this.formatting == Formatting.Pretty || this.formatting != json.strFormatting) {
+                    this.formatting = Formatting.Unknown;
+                }
+            }
+            json.writeTo(generator);
+        }
+
         public JSON build() {
+            long started = eventStart(JSONEvent.Type.Build);
+            long size;
+            JSON json;
+            try {
+                finish();
+                size = out.size();
+
+                if (format != Format.Text) {
+                    json = fromBytes(out.toByteArray(), format);
+                } else if (canonical) {
+                    json = new JSON(toCanonical(), Formatting.Canonical);
+                } else {
+                    json = new JSON(out.toString(DEFAULT_CHARSET), formatting);
+                }
+            } finally {
+                release();
+            }
+            eventEnd(JSONEvent.Type.Build, started, size, null, canonical ? Formatting.Canonical : formatting, null, null);
+            return json;
+        }
+
+        public byte[] buildBytes() {
+            long started = eventStart(JSONEvent.Type.Build);
+            byte[] data;
+            try {
+                finish();
+                data = canonical ? toCanonical().getBytes(DEFAULT_CHARSET) : out.toByteArray();
+            } finally {
+                release();
+            }
+            eventEnd(JSONEvent.Type.Build, started, data.length, null, canonical ? Formatting.Canonical : formatting, null, null);
+            return data;
+        }
+
+        private String toCanonical() {
+            JSON json = new JSON(out.toString(DEFAULT_CHARSET), Formatting.Compact);
+            json.localObjectMapper = objectMapper;
+            return json.toStringCanonical();
+        }
+
+        private void finish() {
             try {
                 generator.flush();
                 generator.close();
                 generator = null;
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw failed(e);
+            }
+        }
+
+        private void release() {
+            if (pooled) {
+                if (out.capacity() > pooledBuilderMaxRetainedBufferSize) {
+                    out = new BuilderOutputStream();
+                }
+                inUse = false;
             }
+        }
 
-            return new JSON(new String(out.toByteArray(), DEFAULT_CHARSET), formatting);
+        //a failed builder is abandoned by its caller, so the pooled instance is given back to the thread
+        private RuntimeException failed(IOException e) {
+            release();
+            return new RuntimeException(e);
         }
 
 
@@ -1580,7 +3529,80 @@ public final class JSON implements Serializable, Cloneable {
                 }
             }
 
-            return new String(out.toByteArray(), DEFAULT_CHARSET);
+            return out.toString(DEFAULT_CHARSET);
+        }
+    }
+
+    private static final class PathIndex {
+        static final PathIndex UNBUILT = new PathIndex();
+
+        final JsonNode array;
+        final int size;
+        final Map<IndexKey, Integer> positions;
+
+        private PathIndex() {
+            array = null;
+            size = -1;
+            positions = Collections.emptyMap();
+        }
+
+        PathIndex(JsonNode array) {
+            this.array = array;
+            this.size = array.size();
+            this.positions = new HashMap<IndexKey, Integer>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                IndexKey item = new IndexKey(array.get(i));
+                if (!positions.containsKey(item)) {
+                    positions.put(item, i);
+                }
+            }
+        }
+    }
+
+    //hash codes of primitive-backed and regular arrays of the same numbers are equal, so only equality needs care
+    private static final class IndexKey {
+        final JsonNode node;
+
+        IndexKey(JsonNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IndexKey && NumericArrayNode.equal(node, ((IndexKey) o).node);
+        }
+
+        @Override
+        public int hashCode() {
+            return node.hashCode();
+        }
+    }
+
+    private static final class Frozen {
+        final String compact;
+        volatile String pretty;
+        volatile String canonical;
+        final ConcurrentHashMap<String, JsonNode> paths = new ConcurrentHashMap<String, JsonNode>();
+
+        Frozen(String compact) {
+            this.compact = compact;
+        }
+    }
+
+    static final class BuilderOutputStream extends ByteArrayOutputStream {
+        BuilderOutputStream() {
+        }
+
+        BuilderOutputStream(int size) {
+            super(size);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        String toString(Charset charset) {
+            return new String(buf, 0, count, charset);
         }
     }
 }
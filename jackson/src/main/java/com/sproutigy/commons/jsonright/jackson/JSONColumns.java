@@ -0,0 +1,302 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class JSONColumns {
+
+    public enum Type {
+        Long, Double, String
+    }
+
+    public static final class Spec {
+        private final String field;
+        private final Type type;
+
+        private Spec(String field, Type type) {
+            if (field == null) {
+                throw new NullPointerException("field == null");
+            }
+            this.field = field;
+            this.type = type;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Type getType() {
+            return type;
+        }
+    }
+
+    public static final class Column {
+        private final String field;
+        private final Type type;
+        private long[] longs;
+        private double[] doubles;
+        private int[] codes;
+        private final Map<String, Integer> dictionaryIndex;
+        private final List<String> dictionary;
+        private final BitSet nulls = new BitSet();
+        private boolean present;
+
+        private Column(Spec spec, int capacity) {
+            this.field = spec.field;
+            this.type = spec.type;
+            switch (type) {
+                case Long:
+                    longs = new long[capacity];
+                    dictionaryIndex = null;
+                    dictionary = null;
+                    break;
+                case Double:
+                    doubles = new double[capacity];
+                    dictionaryIndex = null;
+                    dictionary = null;
+                    break;
+                default:
+                    codes = new int[capacity];
+                    dictionaryIndex = new HashMap<String, Integer>();
+                    dictionary = new ArrayList<String>();
+            }
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public long[] getLongs() {
+            checkType(Type.Long);
+            return longs;
+        }
+
+        public double[] getDoubles() {
+            checkType(Type.Double);
+            return doubles;
+        }
+
+        //dictionary codes of string values, -1 for nulls
+        public int[] getCodes() {
+            checkType(Type.String);
+            return codes;
+        }
+
+        public String[] getDictionary() {
+            checkType(Type.String);
+            return dictionary.toArray(new String[dictionary.size()]);
+        }
+
+        public String getString(int row) {
+            checkType(Type.String);
+            int code = codes[row];
+            return code != -1 ? dictionary.get(code) : null;
+        }
+
+        public BitSet getNulls() {
+            return nulls;
+        }
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        private void checkType(Type expected) {
+            if (type != expected) {
+                throw new IllegalStateException("Column " + field + " is of type " + type);
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            int length = type == Type.Long ? longs.length : type == Type.Double ? doubles.length : codes.length;
+            if (capacity > length) {
+                int newLength = Math.max(capacity, length << 1);
+                switch (type) {
+                    case Long:
+                        longs = Arrays.copyOf(longs, newLength);
+                        break;
+                    case Double:
+                        doubles = Arrays.copyOf(doubles, newLength);
+                        break;
+                    default:
+                        codes = Arrays.copyOf(codes, newLength);
+                }
+            }
+        }
+
+        private void trim(int size) {
+            switch (type) {
+                case Long:
+                    longs = Arrays.copyOf(longs, size);
+                    break;
+                case Double:
+                    doubles = Arrays.copyOf(doubles, size);
+                    break;
+                default:
+                    codes = Arrays.copyOf(codes, size);
+            }
+        }
+
+        private void setNull(int row) {
+            nulls.set(row);
+            if (type == Type.String) {
+                codes[row] = -1;
+            }
+        }
+
+        //parser is positioned at the value token
+        private void read(JsonParser parser, JsonToken token, int row) throws IOException {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                setNull(row);
+                return;
+            }
+            if (token == JsonToken.VALUE_NULL) {
+                setNull(row);
+                return;
+            }
+
+            switch (type) {
+                case Long:
+                    if (token == JsonToken.VALUE_NUMBER_INT) {
+                        longs[row] = parser.getLongValue();
+                    } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                        longs[row] = (long) parser.getDoubleValue();
+                    } else {
+                        setNull(row);
+                    }
+                    break;
+                case Double:
+                    if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                        doubles[row] = parser.getDoubleValue();
+                    } else {
+                        setNull(row);
+                    }
+                    break;
+                default:
+                    String value = parser.getText();
+                    Integer code = dictionaryIndex.get(value);
+                    if (code == null) {
+                        code = dictionary.size();
+                        dictionary.add(value);
+                        dictionaryIndex.put(value, code);
+                    }
+                    codes[row] = code;
+            }
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int size;
+    private final Map<String, Column> columns;
+
+    private JSONColumns(int size, Map<String, Column> columns) {
+        this.size = size;
+        this.columns = columns;
+    }
+
+    public static Spec longs(String field) {
+        return new Spec(field, Type.Long);
+    }
+
+    public static Spec doubles(String field) {
+        return new Spec(field, Type.Double);
+    }
+
+    public static Spec strings(String field) {
+        return new Spec(field, Type.String);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Column column(String field) {
+        Column column = columns.get(field);
+        if (column == null) {
+            throw new IllegalArgumentException("No such column: " + field);
+        }
+        return column;
+    }
+
+    public long[] getLongs(String field) {
+        return column(field).getLongs();
+    }
+
+    public double[] getDoubles(String field) {
+        return column(field).getDoubles();
+    }
+
+    public int[] getCodes(String field) {
+        return column(field).getCodes();
+    }
+
+    public String[] getDictionary(String field) {
+        return column(field).getDictionary();
+    }
+
+    public BitSet getNulls(String field) {
+        return column(field).getNulls();
+    }
+
+    //parser is positioned at START_ARRAY of the projected array
+    static JSONColumns read(JsonParser parser, Spec... specs) throws IOException {
+        Map<String, Column> columns = new LinkedHashMap<String, Column>();
+        for (Spec spec : specs) {
+            if (columns.put(spec.field, new Column(spec, INITIAL_CAPACITY)) != null) {
+                throw new IllegalArgumentException("Duplicated column: " + spec.field);
+            }
+        }
+        Column[] all = columns.values().toArray(new Column[columns.size()]);
+
+        int row = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            for (Column column : all) {
+                column.ensureCapacity(row + 1);
+                column.present = false;
+            }
+
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Column column = columns.get(parser.getCurrentName());
+                    token = parser.nextToken();
+                    if (column != null) {
+                        column.read(parser, token, row);
+                        column.present = true;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+
+            for (Column column : all) {
+                if (!column.present) {
+                    column.setNull(row);
+                }
+            }
+            row++;
+        }
+
+        for (Column column : all) {
+            column.trim(row);
+        }
+        return new JSONColumns(row, columns);
+    }
+}
@@ -0,0 +1,135 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+//handle to the container at a path; resolution is cached until the document's modification counter changes
+public final class JSONCursor {
+
+    private final JSON json;
+    private final String path;
+    private JsonNode container;
+    private boolean writable;
+    private int modCount;
+
+    JSONCursor(JSON json, String path) {
+        this.json = json;
+        this.path = path != null ? path : "";
+        container = resolve();
+        modCount = json.modCount();
+    }
+
+    public JSON getJSON() {
+        return json;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public JsonNode node() {
+        return current();
+    }
+
+    public JsonNode get(String path) {
+        JsonNode container = current();
+        if (container == null) {
+            return null;
+        }
+        return json.resolve(container, path);
+    }
+
+    public <T> T get(String path, Class<? extends T> clazz) {
+        JsonNode node = get(path);
+        try {
+            if (node == null) {
+                return null;
+            } else {
+                return json.getObjectMapper().treeToValue(node, clazz);
+            }
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    public boolean has(String path) {
+        JsonNode node = get(path);
+        return (node != null && !node.isNull());
+    }
+
+    public int size() {
+        JsonNode container = current();
+        return container != null ? container.size() : 0;
+    }
+
+    public JSONCursor set(String path, Object value) {
+        if (path == null || path.isEmpty()) {
+            json.set(this.path, value);
+            return this;
+        }
+        write(path, path.charAt(0) == '[', false, value);
+        return this;
+    }
+
+    public JSONCursor append(Object value) {
+        write("[]", true, false, value);
+        return this;
+    }
+
+    public JSONCursor remove(String path) {
+        return remove(path, null);
+    }
+
+    public JSONCursor remove(String path, Object value) {
+        if (path == null || path.isEmpty()) {
+            json.remove(this.path, value);
+            return this;
+        }
+        if (current() != null) {
+            write(path, path.charAt(0) == '[', true, value);
+        }
+        return this;
+    }
+
+    private void write(String path, boolean array, boolean remove, Object value) {
+        current();
+        if (!writable) {
+            container = json.cursorContainer(this.path, array);
+            writable = true;
+        }
+        json.write(container, this.path, path, remove, value);
+        modCount = json.modCount();
+    }
+
+    private JsonNode current() {
+        if (modCount != json.modCount()) {
+            JsonNode resolved = resolve();
+            if (resolved == null && container != null) {
+                throw new IllegalStateException("JSON cursor is stale, container has been removed: " + path);
+            }
+            if (resolved != container) {
+                container = resolved;
+                writable = false;
+            }
+            //containers may also stop being writable when the document is copied
+            if (writable && !json.isOwned(container)) {
+                writable = false;
+            }
+            modCount = json.modCount();
+        }
+        return container;
+    }
+
+    private JsonNode resolve() {
+        JsonNode resolved = json.get(path);
+        if (resolved == null || (!resolved.isObject() && !resolved.isArray())) {
+            return null;
+        }
+        return resolved;
+    }
+
+    @Override
+    public String toString() {
+        return "JSONCursor(" + path + ")";
+    }
+}
@@ -0,0 +1,176 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//batch of modifications applied in a single depth-first pass over a prefix trie of their paths;
+//array indexes refer to the document before the edit, so remove("a[0]").remove("a[1]") on [1,2,3] gives [3],
+//while the same calls made one by one on JSON give [2]
+public final class JSONEdit {
+
+    private final JSON json;
+    private final Entry root = new Entry();
+    private final List<String> paths = new ArrayList<String>();
+    private boolean atomic;
+
+    JSONEdit(JSON json) {
+        this.json = json;
+    }
+
+    public JSONEdit set(String path, Object value) {
+        add(path, new Operation(false, value));
+        return this;
+    }
+
+    public JSONEdit remove(String path) {
+        checkRemovable(path);
+        add(path, new Operation(true, null));
+        return this;
+    }
+
+    public JSONEdit remove(String path, Object value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+        checkRemovable(path);
+        add(path, new Operation(true, value));
+        return this;
+    }
+
+    public JSONEdit append(String path, Object value) {
+        return set(path == null || path.isEmpty() ? "[]" : path + "[]", value);
+    }
+
+    //all-or-nothing: when any of operations fails, the document is left untouched
+    public JSONEdit atomic(boolean atomic) {
+        this.atomic = atomic;
+        return this;
+    }
+
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public JSON apply() {
+        return json.apply(this);
+    }
+
+    Entry getRoot() {
+        return root;
+    }
+
+    List<String> getPaths() {
+        return paths;
+    }
+
+    //document itself has no parent to be removed from, so it is rejected instead of being ignored
+    private static void checkRemovable(String path) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("Root cannot be removed");
+        }
+    }
+
+    private void add(String path, Operation operation) {
+        Entry entry = root;
+        if (path != null && !path.isEmpty()) {
+            for (Object segment : parse(path)) {
+                entry = entry.child(segment);
+            }
+        }
+        entry.operations.add(operation);
+        paths.add(path);
+    }
+
+    static List<Object> parse(String path) {
+        if (path.startsWith(".") || path.endsWith(".") || path.startsWith("]") || path.endsWith("[")) {
+            throw new IllegalArgumentException("Malformed JSON path");
+        }
+
+        List<Object> segments = new ArrayList<Object>();
+        int pos = 0;
+        while (pos < path.length()) {
+            int end;
+            if (path.charAt(pos) == '[') {
+                end = path.indexOf(']', pos);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+                String indexer = path.substring(pos + 1, end);
+                end++;
+                if (indexer.isEmpty()) {
+                    segments.add(new Append());
+                } else {
+                    int arrayIndex;
+                    try {
+                        arrayIndex = Integer.parseInt(indexer);
+                    } catch (NumberFormatException notInteger) {
+                        throw new IllegalArgumentException("Malformed JSON path");
+                    }
+                    if (arrayIndex < 0) {
+                        throw new IllegalArgumentException("Malformed JSON path");
+                    }
+                    segments.add(arrayIndex);
+                }
+            } else {
+                int nextDot = path.indexOf('.', pos + 1);
+                int nextIndexer = path.indexOf('[', pos + 1);
+                end = path.length();
+                if (nextDot != -1) {
+                    end = nextDot;
+                }
+                if (nextIndexer != -1 && nextIndexer < end) {
+                    end = nextIndexer;
+                }
+                segments.add(path.substring(pos, end));
+            }
+
+            pos = end;
+            if (pos < path.length() && path.charAt(pos) == '.') {
+                pos++;
+            }
+        }
+        return segments;
+    }
+
+    static final class Operation {
+        final boolean remove;
+        final Object value;
+
+        Operation(boolean remove, Object value) {
+            this.remove = remove;
+            this.value = value;
+        }
+    }
+
+    //every [] segment appends a new item, so it is a distinct key
+    static final class Append {
+    }
+
+    static final class Entry {
+        final List<Operation> operations = new ArrayList<Operation>(1);
+        Map<Object, Entry> children;
+        boolean arrayChildren;
+
+        Entry child(Object segment) {
+            boolean array = !(segment instanceof String);
+            if (children == null) {
+                children = new LinkedHashMap<Object, Entry>();
+                arrayChildren = array;
+            } else if (arrayChildren != array) {
+                throw new IllegalArgumentException("Conflicting JSON paths: both object fields and array items of the same node");
+            }
+            Entry child = children.get(segment);
+            if (child == null) {
+                child = new Entry();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
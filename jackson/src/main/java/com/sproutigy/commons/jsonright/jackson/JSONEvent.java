@@ -0,0 +1,95 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+//timed operation reported to JSONEventListener, fields that do not apply to the operation are null (or -1 size)
+public final class JSONEvent {
+
+    public enum Type {
+        //string (or tape) materialized into a tree by JSON.node()
+        Parse,
+        //tree (or tape) written as text by toStringCompact(), toStringPretty() and toStringCanonical()
+        Serialize,
+        //deserialize(Class)
+        Deserialize,
+        //Builder.build() and buildBytes()
+        Build,
+        //get(path) outside of root
+        ResolvePath,
+        //ClassedJSON.deserialize()
+        ClassedDecode
+    }
+
+    private final Type type;
+    private final long startNanos;
+    private final long durationNanos;
+    private final long size;
+    private final JSON.StorageType storageType;
+    private final JSON.Formatting formatting;
+    private final Class<?> targetClass;
+    private final String path;
+
+    JSONEvent(Type type, long startNanos, long durationNanos, long size, JSON.StorageType storageType, JSON.Formatting formatting, Class<?> targetClass, String path) {
+        this.type = type;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.size = size;
+        this.storageType = storageType;
+        this.formatting = formatting;
+        this.targetClass = targetClass;
+        this.path = path;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    //System.nanoTime() at the start of the operation
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    //characters of parsed or written text (bytes for binary formats), -1 where unknown
+    public long getSize() {
+        return size;
+    }
+
+    //storage the operation started from
+    public JSON.StorageType getStorageType() {
+        return storageType;
+    }
+
+    public JSON.Formatting getFormatting() {
+        return formatting;
+    }
+
+    public Class<?> getTargetClass() {
+        return targetClass;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("JSONEvent{").append(type)
+                .append(": durationNanos=").append(durationNanos)
+                .append(" size=").append(size);
+        if (storageType != null) {
+            s.append(" storageType=").append(storageType);
+        }
+        if (formatting != null) {
+            s.append(" formatting=").append(formatting);
+        }
+        if (targetClass != null) {
+            s.append(" targetClass=").append(targetClass.getName());
+        }
+        if (path != null) {
+            s.append(" path=").append(path);
+        }
+        return s.append('}').toString();
+    }
+}
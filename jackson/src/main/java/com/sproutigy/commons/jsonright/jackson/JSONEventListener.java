@@ -0,0 +1,15 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+//receives timed operations, set by JSON.setEventListener() or discovered through ServiceLoader;
+//json-right-jfr module maps them to JDK Flight Recorder events
+public interface JSONEventListener {
+
+    //checked before an operation is timed, false means no clock reads and no event; true is followed by onEvent()
+    //of the same type on the same thread, unless the operation fails (events of nested operations come first)
+    boolean isEnabled(JSONEvent.Type type);
+
+    //operations shorter than that are not reported, 0 reports all
+    long getThresholdNanos(JSONEvent.Type type);
+
+    void onEvent(JSONEvent event);
+}
@@ -0,0 +1,9 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+public interface JSONFormatProvider {
+    JSON.Format getFormat();
+
+    JsonFactory createFactory();
+}
@@ -0,0 +1,135 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class JSONInterner {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64 * 1024;
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 32;
+
+    //approximate heap footprint of a String with its char array and of a TextNode wrapper
+    private static final int STRING_OVERHEAD = 40;
+    private static final int TEXT_NODE_OVERHEAD = 16;
+
+    private final int maxEntries;
+    private final int maxValueLength;
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, TextNode> values = new ConcurrentHashMap<String, TextNode>();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong nameHits = new AtomicLong();
+    private final AtomicLong valueHits = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public JSONInterner() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    //maxValueLength of 0 interns field names only
+    public JSONInterner(int maxEntries, int maxValueLength) {
+        if (maxEntries < 0 || maxValueLength < 0) {
+            throw new IllegalArgumentException("Interner limits cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxValueLength = maxValueLength;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    public int size() {
+        return entries.get();
+    }
+
+    public long getNameHits() {
+        return nameHits.get();
+    }
+
+    public long getValueHits() {
+        return valueHits.get();
+    }
+
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    public void clear() {
+        names.clear();
+        values.clear();
+        entries.set(0);
+        nameHits.set(0);
+        valueHits.set(0);
+        savedBytes.set(0);
+    }
+
+    public String name(String name) {
+        String canonical = names.get(name);
+        if (canonical == null) {
+            if (!reserve()) {
+                return name;
+            }
+            canonical = names.putIfAbsent(name, name);
+            if (canonical == null) {
+                return name;
+            }
+            entries.decrementAndGet();
+        }
+        nameHits.incrementAndGet();
+        //parser's own symbol table may already have returned the very same instance
+        if (canonical != name) {
+            savedBytes.addAndGet(stringSize(name));
+        }
+        return canonical;
+    }
+
+    public TextNode text(String value) {
+        if (value.length() > maxValueLength) {
+            return TextNode.valueOf(value);
+        }
+        TextNode canonical = values.get(value);
+        if (canonical == null) {
+            TextNode node = TextNode.valueOf(value);
+            if (!reserve()) {
+                return node;
+            }
+            canonical = values.putIfAbsent(value, node);
+            if (canonical == null) {
+                return node;
+            }
+            entries.decrementAndGet();
+        }
+        valueHits.incrementAndGet();
+        savedBytes.addAndGet(stringSize(value) + TEXT_NODE_OVERHEAD);
+        return canonical;
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int count = entries.get();
+            if (count >= maxEntries) {
+                return false;
+            }
+            if (entries.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static long stringSize(String s) {
+        return STRING_OVERHEAD + 2L * s.length();
+    }
+
+    @Override
+    public String toString() {
+        return "JSONInterner{size=" + size() + ", nameHits=" + getNameHits() + ", valueHits=" + getValueHits() + ", savedBytes=" + getSavedBytes() + "}";
+    }
+}
@@ -0,0 +1,188 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//counters of costly conversions done behind the scenes, enabled by JSON.setMetrics()
+public final class JSONMetrics {
+
+    public enum Kind {
+        //string parsed into a tree
+        Parse,
+        //tape materialized into a tree
+        TapeToTree,
+        //tree (or tape) written as a compact string
+        Serialize,
+        //tree written as a pretty string, also by toString()
+        PrettyPrint,
+        //object converted to a tree by ObjectMapper.valueToTree()
+        ValueToTree,
+        //tree written in canonical form, as a string or streamed
+        Canonicalize
+    }
+
+    private static final int COUNT = 0;
+    private static final int SIZE = 1;
+    private static final int NANOS = 2;
+    private static final int METRICS = 3;
+
+    private static final int MAX_CALL_SITES = 1024;
+    private static final int CALL_SITE_DEPTH = 8;
+    private static final String PACKAGE_PREFIX = JSON.class.getPackage().getName() + ".";
+
+    private final LongAdder[] counters = new LongAdder[Kind.values().length * METRICS];
+    private final int samplingInterval;
+    private final Map<Kind, ConcurrentHashMap<String, AtomicLong>> callSites = new EnumMap<Kind, ConcurrentHashMap<String, AtomicLong>>(Kind.class);
+
+    public JSONMetrics() {
+        this(0);
+    }
+
+    //about one in samplingInterval operations of a kind records its call site, 0 disables sampling
+    public JSONMetrics(int samplingInterval) {
+        if (samplingInterval < 0) {
+            throw new IllegalArgumentException("samplingInterval < 0");
+        }
+        this.samplingInterval = samplingInterval;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (Kind kind : Kind.values()) {
+            callSites.put(kind, new ConcurrentHashMap<String, AtomicLong>());
+        }
+    }
+
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    void record(Kind kind, long size, long nanos) {
+        counter(kind, COUNT).increment();
+        if (size > 0) {
+            counter(kind, SIZE).add(size);
+        }
+        counter(kind, NANOS).add(nanos);
+
+        //sampled at random, as a shared sequence number would be contended by all threads
+        if (samplingInterval > 0 && ThreadLocalRandom.current().nextInt(samplingInterval) == 0) {
+            recordCallSite(kind);
+        }
+    }
+
+    private void recordCallSite(Kind kind) {
+        StringBuilder site = new StringBuilder();
+        int depth = 0;
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (depth == 0 && element.getClassName().startsWith(PACKAGE_PREFIX)) {
+                continue;
+            }
+            if (depth > 0) {
+                site.append(" <- ");
+            }
+            site.append(element);
+            if (++depth == CALL_SITE_DEPTH) {
+                break;
+            }
+        }
+
+        ConcurrentHashMap<String, AtomicLong> sites = callSites.get(kind);
+        String key = site.toString();
+        AtomicLong counter = sites.get(key);
+        if (counter == null) {
+            if (sites.size() >= MAX_CALL_SITES) {
+                return;
+            }
+            AtomicLong created = new AtomicLong();
+            counter = sites.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    public Snapshot snapshot() {
+        Map<Kind, long[]> values = new EnumMap<Kind, long[]>(Kind.class);
+        Map<Kind, Map<String, Long>> sites = new EnumMap<Kind, Map<String, Long>>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            long[] sums = new long[METRICS];
+            for (int metric = 0; metric < METRICS; metric++) {
+                sums[metric] = counter(kind, metric).sum();
+            }
+            values.put(kind, sums);
+
+            Map<String, Long> kindSites = new HashMap<String, Long>();
+            for (Map.Entry<String, AtomicLong> site : callSites.get(kind).entrySet()) {
+                kindSites.put(site.getKey(), site.getValue().get());
+            }
+            sites.put(kind, Collections.unmodifiableMap(kindSites));
+        }
+        return new Snapshot(values, sites);
+    }
+
+    public void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        for (ConcurrentHashMap<String, AtomicLong> sites : callSites.values()) {
+            sites.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private LongAdder counter(Kind kind, int metric) {
+        return counters[kind.ordinal() * METRICS + metric];
+    }
+
+    public static final class Snapshot {
+        private final Map<Kind, long[]> values;
+        private final Map<Kind, Map<String, Long>> callSites;
+
+        private Snapshot(Map<Kind, long[]> values, Map<Kind, Map<String, Long>> callSites) {
+            this.values = values;
+            this.callSites = callSites;
+        }
+
+        public long getCount(Kind kind) {
+            return values.get(kind)[COUNT];
+        }
+
+        //characters of parsed or written text, 0 where unknown
+        public long getSize(Kind kind) {
+            return values.get(kind)[SIZE];
+        }
+
+        public long getNanos(Kind kind) {
+            return values.get(kind)[NANOS];
+        }
+
+        //sampled call sites: up to 8 innermost stack frames outside of this library, with their counts
+        public Map<String, Long> getCallSites(Kind kind) {
+            return callSites.get(kind);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder("JSONMetrics{");
+            for (Kind kind : Kind.values()) {
+                if (kind.ordinal() > 0) {
+                    s.append(", ");
+                }
+                s.append(kind).append(": count=").append(getCount(kind))
+                        .append(" size=").append(getSize(kind))
+                        .append(" nanos=").append(getNanos(kind));
+            }
+            return s.append('}').toString();
+        }
+    }
+}
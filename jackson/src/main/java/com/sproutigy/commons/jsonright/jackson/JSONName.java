@@ -0,0 +1,48 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+public final class JSONName {
+    private final SerializedString serialized;
+
+    public JSONName(String name) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        this.serialized = new SerializedString(name);
+
+        //encode eagerly, so that the first write on a hot path does not pay for it
+        serialized.asQuotedChars();
+        serialized.asQuotedUTF8();
+        serialized.asUnquotedUTF8();
+    }
+
+    public String getValue() {
+        return serialized.getValue();
+    }
+
+    public SerializableString asSerializableString() {
+        return serialized;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        JSONName that = (JSONName) o;
+
+        return getValue().equals(that.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return getValue().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getValue();
+    }
+}
@@ -0,0 +1,232 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//bounded cache of parsed trees (frozen documents, shared) and of deserialized immutable values, keyed by input text;
+//weight of an entry is the length of its input
+public final class JSONParseCache {
+
+    private static final int SEGMENTS = 16;
+    private static final int DOORKEEPER_SIZE = 1024;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxEntryWeight;
+    private final Set<Class<?>> immutableTypes = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public JSONParseCache(long maxWeight) {
+        this(maxWeight, maxWeight / SEGMENTS);
+    }
+
+    public JSONParseCache(long maxWeight, long maxEntryWeight) {
+        if (maxWeight <= 0 || maxEntryWeight <= 0) {
+            throw new IllegalArgumentException("Cache weights have to be positive");
+        }
+        this.maxEntryWeight = maxEntryWeight;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(maxWeight / SEGMENTS, 1));
+        }
+        immutable(String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+                Float.class, Double.class, BigInteger.class, BigDecimal.class);
+    }
+
+    //deserialize(Class) results are cached (and shared) only for types registered as immutable
+    public JSONParseCache immutable(Class<?>... types) {
+        for (Class<?> type : types) {
+            immutableTypes.add(type);
+        }
+        return this;
+    }
+
+    public boolean isImmutable(Class<?> type) {
+        return immutableTypes.contains(type);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    JSON getDocument(String json) {
+        return (JSON) get(json, null);
+    }
+
+    //admitted tree is kept as a frozen document, which shares it with all instances parsed from equal text
+    JSON putDocument(String json, JsonNode node) {
+        if (json.length() > maxEntryWeight) {
+            return null;
+        }
+        Key key = new Key(json, null);
+        Segment segment = segment(key);
+        if (!segment.admit(key)) {
+            return null;
+        }
+        JSON document = new JSON(node).freeze();
+        segment.put(key, document, evictions);
+        return document;
+    }
+
+    Object getValue(String json, Class<?> type) {
+        return get(json, type);
+    }
+
+    boolean putValue(String json, Class<?> type, Object value) {
+        return put(json, type, value);
+    }
+
+    private Object get(String json, Class<?> type) {
+        Key key = new Key(json, type);
+        Object value = segment(key).get(key);
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    private boolean put(String json, Class<?> type, Object value) {
+        if (json.length() > maxEntryWeight) {
+            return false;
+        }
+        Key key = new Key(json, type);
+        Segment segment = segment(key);
+        return segment.admit(key) && segment.put(key, value, evictions);
+    }
+
+    private Segment segment(Key key) {
+        return segments[(int) (key.hash >>> 60)];
+    }
+
+    private static final class Segment {
+        private final long maxWeight;
+        private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+        //inputs are admitted on their second occurrence, so one-off documents do not evict repeated ones
+        private final long[] doorkeeper = new long[DOORKEEPER_SIZE];
+        private long weight;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized Object get(Key key) {
+            return entries.get(key);
+        }
+
+        synchronized boolean admit(Key key) {
+            int slot = (int) (key.hash & (DOORKEEPER_SIZE - 1));
+            if (doorkeeper[slot] != key.hash) {
+                doorkeeper[slot] = key.hash;
+                return false;
+            }
+            return true;
+        }
+
+        synchronized boolean put(Key key, Object value, AtomicLong evictions) {
+            if (entries.put(key, value) == null) {
+                weight += key.json.length();
+            }
+            Iterator<Map.Entry<Key, Object>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                Key evicted = eldest.next().getKey();
+                if (evicted == key) {
+                    continue;
+                }
+                eldest.remove();
+                weight -= evicted.json.length();
+                evictions.incrementAndGet();
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private static final class Key {
+        private final String json;
+        private final Class<?> type;
+        private final long hash;
+
+        Key(String json, Class<?> type) {
+            this.json = json;
+            this.type = type;
+            long hash = json.hashCode() * 0x9e3779b97f4a7c15L + json.length();
+            if (type != null) {
+                hash = hash * 31 + type.getName().hashCode();
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && type == other.type && json.equals(other.json);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
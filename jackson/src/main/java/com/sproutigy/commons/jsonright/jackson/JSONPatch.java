@@ -0,0 +1,636 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//RFC 6902 JSON Patch and RFC 7386 JSON Merge Patch
+public final class JSONPatch {
+
+    //arrays differing in more items than that (after skipping equal ends) are compared by position instead of LCS
+    private static final long MAX_LCS_CELLS = 4L * 1024 * 1024;
+
+    private static final Comparator<JsonNode> NUMERIC_EQUALITY = new Comparator<JsonNode>() {
+        @Override
+        public int compare(JsonNode o1, JsonNode o2) {
+            if (o1.equals(o2)) {
+                return 0;
+            }
+            if (o1.isNumber() && o2.isNumber()) {
+                return o1.decimalValue().compareTo(o2.decimalValue()) == 0 ? 0 : 1;
+            }
+            return 1;
+        }
+    };
+
+    private JSONPatch() {
+    }
+
+    public static ArrayNode diff(JsonNode source, JsonNode target) {
+        return diff(source, target, JsonNodeFactory.instance);
+    }
+
+    static ArrayNode diff(JsonNode source, JsonNode target, JsonNodeFactory nodeFactory) {
+        Differ differ = new Differ(nodeFactory);
+        differ.diff(source, target, "");
+        return differ.patch;
+    }
+
+    public static JsonNode apply(JsonNode document, JsonNode patch) {
+        return apply(document, patch, JsonNodeFactory.instance, null);
+    }
+
+    //the document is not modified: containers along modified paths are copied and collected into the fresh set
+    static JsonNode apply(JsonNode document, JsonNode patch, JsonNodeFactory nodeFactory, Set<JsonNode> fresh) {
+        if (patch == null || !patch.isArray()) {
+            throw new IllegalArgumentException("Malformed JSON patch");
+        }
+        Writer writer = new Writer(document, nodeFactory, fresh);
+        for (JsonNode operation : patch) {
+            writer.apply(operation);
+        }
+        return writer.root;
+    }
+
+    public static JsonNode merge(JsonNode document, JsonNode mergePatch) {
+        return merge(document, mergePatch, JsonNodeFactory.instance, null);
+    }
+
+    static JsonNode merge(JsonNode document, JsonNode mergePatch, JsonNodeFactory nodeFactory, Set<JsonNode> fresh) {
+        if (mergePatch == null) {
+            throw new NullPointerException("mergePatch == null");
+        }
+        Writer writer = new Writer(document, nodeFactory, fresh);
+        return writer.merge(document, mergePatch);
+    }
+
+    static List<String> parsePointer(String pointer) {
+        if (pointer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new IllegalArgumentException("Malformed JSON pointer: " + pointer);
+        }
+        List<String> tokens = new ArrayList<String>();
+        for (String token : pointer.substring(1).split("/", -1)) {
+            tokens.add(token.replace("~1", "/").replace("~0", "~"));
+        }
+        return tokens;
+    }
+
+    static String appendPointer(String pointer, String token) {
+        return pointer + "/" + token.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static final class Writer {
+        private final JsonNodeFactory nodeFactory;
+        private final Set<JsonNode> fresh;
+        private JsonNode root;
+
+        Writer(JsonNode root, JsonNodeFactory nodeFactory, Set<JsonNode> fresh) {
+            this.root = root;
+            this.nodeFactory = nodeFactory;
+            this.fresh = fresh != null ? fresh : Collections.newSetFromMap(new IdentityHashMap<JsonNode, Boolean>());
+        }
+
+        void apply(JsonNode operation) {
+            String op = text(operation, "op");
+            String path = text(operation, "path");
+            if (op.equals("add")) {
+                add(path, value(operation).deepCopy());
+            } else if (op.equals("remove")) {
+                remove(path);
+            } else if (op.equals("replace")) {
+                replace(path, value(operation).deepCopy());
+            } else if (op.equals("move")) {
+                String from = text(operation, "from");
+                if (path.startsWith(from + "/")) {
+                    throw new IllegalStateException("JSON patch failed, cannot move into own child: " + path);
+                }
+                if (!from.equals(path)) {
+                    add(path, remove(from));
+                }
+            } else if (op.equals("copy")) {
+                add(path, get(text(operation, "from")).deepCopy());
+            } else if (op.equals("test")) {
+                if (!NumericArrayNode.equal(get(path), value(operation), NUMERIC_EQUALITY)) {
+                    throw new IllegalStateException("JSON patch failed, test not passed: " + path);
+                }
+            } else {
+                throw new IllegalArgumentException("Malformed JSON patch, unsupported operation: " + op);
+            }
+        }
+
+        JsonNode merge(JsonNode target, JsonNode patch) {
+            if (!patch.isObject()) {
+                return patch.deepCopy();
+            }
+            ObjectNode result;
+            if (target != null && target.isObject()) {
+                result = (ObjectNode) writable(target);
+            } else {
+                result = nodeFactory.objectNode();
+                fresh.add(result);
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getValue().isNull()) {
+                    result.remove(field.getKey());
+                } else {
+                    result.set(field.getKey(), merge(result.get(field.getKey()), field.getValue()));
+                }
+            }
+            return result;
+        }
+
+        private void add(String path, JsonNode value) {
+            List<String> tokens = parsePointer(path);
+            if (tokens.isEmpty()) {
+                root = value;
+                return;
+            }
+            JsonNode parent = parentForWrite(tokens, path);
+            String token = tokens.get(tokens.size() - 1);
+            if (parent.isObject()) {
+                ((ObjectNode) parent).set(token, value);
+            } else if (token.equals("-")) {
+                ((ArrayNode) parent).add(value);
+            } else {
+                int index = index(token, parent.size() + 1, path);
+                ((ArrayNode) parent).insert(index, value);
+            }
+        }
+
+        private void replace(String path, JsonNode value) {
+            List<String> tokens = parsePointer(path);
+            if (tokens.isEmpty()) {
+                root = value;
+                return;
+            }
+            JsonNode parent = parentForWrite(tokens, path);
+            String token = tokens.get(tokens.size() - 1);
+            if (parent.isObject()) {
+                if (parent.get(token) == null) {
+                    throw new IllegalStateException("JSON patch failed, path not found: " + path);
+                }
+                ((ObjectNode) parent).set(token, value);
+            } else {
+                ((ArrayNode) parent).set(index(token, parent.size(), path), value);
+            }
+        }
+
+        private JsonNode remove(String path) {
+            List<String> tokens = parsePointer(path);
+            if (tokens.isEmpty()) {
+                throw new IllegalStateException("JSON patch failed, cannot remove the root");
+            }
+            JsonNode parent = parentForWrite(tokens, path);
+            String token = tokens.get(tokens.size() - 1);
+            JsonNode removed;
+            if (parent.isObject()) {
+                removed = ((ObjectNode) parent).remove(token);
+            } else {
+                removed = ((ArrayNode) parent).remove(index(token, parent.size(), path));
+            }
+            if (removed == null) {
+                throw new IllegalStateException("JSON patch failed, path not found: " + path);
+            }
+            return removed;
+        }
+
+        private JsonNode get(String path) {
+            JsonNode current = root;
+            for (String token : parsePointer(path)) {
+                current = child(current, token, path);
+            }
+            return current;
+        }
+
+        //container holding the last token, copied along the way when not created by this writer
+        private JsonNode parentForWrite(List<String> tokens, String path) {
+            if (root == null || !(root.isObject() || root.isArray())) {
+                throw new IllegalStateException("JSON patch failed, path not found: " + path);
+            }
+            root = writable(root);
+            JsonNode current = root;
+            for (int i = 0; i < tokens.size() - 1; i++) {
+                String token = tokens.get(i);
+                JsonNode child = child(current, token, path);
+                if (!child.isObject() && !child.isArray()) {
+                    throw new IllegalStateException("JSON patch failed, path not found: " + path);
+                }
+                JsonNode copy = writable(child);
+                if (copy != child) {
+                    if (current.isObject()) {
+                        ((ObjectNode) current).set(token, copy);
+                    } else {
+                        ((ArrayNode) current).set(Integer.parseInt(token), copy);
+                    }
+                }
+                current = copy;
+            }
+            return current;
+        }
+
+        private JsonNode writable(JsonNode container) {
+            if (fresh.contains(container)) {
+                return container;
+            }
+            JsonNode copy;
+            if (container instanceof NumericArrayNode) {
+                copy = ((NumericArrayNode) container).toArrayNode(nodeFactory);
+            } else if (container.isObject()) {
+                copy = nodeFactory.objectNode().setAll((ObjectNode) container);
+            } else {
+                copy = nodeFactory.arrayNode().addAll((ArrayNode) container);
+            }
+            fresh.add(copy);
+            return copy;
+        }
+
+        private static JsonNode child(JsonNode container, String token, String path) {
+            JsonNode child = null;
+            if (container != null && container.isObject()) {
+                child = container.get(token);
+            } else if (container != null && container.isArray()) {
+                child = container.get(index(token, container.size(), path));
+            }
+            if (child == null) {
+                throw new IllegalStateException("JSON patch failed, path not found: " + path);
+            }
+            return child;
+        }
+
+        private static int index(String token, int limit, String path) {
+            if (token.isEmpty() || token.length() > 10 || (token.length() > 1 && token.charAt(0) == '0')) {
+                throw new IllegalStateException("JSON patch failed, path not found: " + path);
+            }
+            for (int i = 0; i < token.length(); i++) {
+                if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                    throw new IllegalStateException("JSON patch failed, path not found: " + path);
+                }
+            }
+            long index = Long.parseLong(token);
+            if (index >= limit) {
+                throw new IllegalStateException("JSON patch failed, path not found: " + path);
+            }
+            return (int) index;
+        }
+
+        private static String text(JsonNode operation, String fieldName) {
+            JsonNode node = operation.get(fieldName);
+            if (node == null || !node.isTextual()) {
+                throw new IllegalArgumentException("Malformed JSON patch, missing " + fieldName);
+            }
+            return node.textValue();
+        }
+
+        private static JsonNode value(JsonNode operation) {
+            JsonNode node = operation.get("value");
+            if (node == null) {
+                throw new IllegalArgumentException("Malformed JSON patch, missing value");
+            }
+            return node;
+        }
+    }
+
+    private static final class Differ {
+        private final JsonNodeFactory nodeFactory;
+        private final ArrayNode patch;
+        //subtree hashes computed once per diff, so unequal subtrees are told apart without deep comparison
+        private final Map<JsonNode, Integer> hashes = new IdentityHashMap<JsonNode, Integer>();
+
+        Differ(JsonNodeFactory nodeFactory) {
+            this.nodeFactory = nodeFactory;
+            this.patch = nodeFactory.arrayNode();
+        }
+
+        void diff(JsonNode source, JsonNode target, String pointer) {
+            //copy-on-write copies share unmodified subtrees, so most of them are skipped by identity
+            if (source == target) {
+                return;
+            }
+            if (source.isObject() && target.isObject()) {
+                diffObjects(source, target, pointer);
+            } else if (source.isArray() && target.isArray()) {
+                diffArrays(source, target, pointer);
+            } else if (!same(source, target)) {
+                emit("replace", null, pointer, target);
+            }
+        }
+
+        private void diffObjects(JsonNode source, JsonNode target, String pointer) {
+            Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode targetValue = target.get(field.getKey());
+                if (targetValue == null) {
+                    emit("remove", null, appendPointer(pointer, field.getKey()), null);
+                } else {
+                    diff(field.getValue(), targetValue, appendPointer(pointer, field.getKey()));
+                }
+            }
+            fields = target.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (source.get(field.getKey()) == null) {
+                    emit("add", null, appendPointer(pointer, field.getKey()), field.getValue());
+                }
+            }
+        }
+
+        private void diffArrays(JsonNode source, JsonNode target, String pointer) {
+            int start = 0;
+            int sourceEnd = source.size();
+            int targetEnd = target.size();
+            while (start < sourceEnd && start < targetEnd && same(source.get(start), target.get(start))) {
+                start++;
+            }
+            while (sourceEnd > start && targetEnd > start && same(source.get(sourceEnd - 1), target.get(targetEnd - 1))) {
+                sourceEnd--;
+                targetEnd--;
+            }
+            int a = sourceEnd - start;
+            int b = targetEnd - start;
+            if (a == 0 && b == 0) {
+                return;
+            }
+
+            Map<Key, Integer> classes = new HashMap<Key, Integer>();
+            int[] sourceClasses = new int[a];
+            int[] targetClasses = new int[b];
+            for (int i = 0; i < a; i++) {
+                sourceClasses[i] = classOf(source.get(start + i), classes);
+            }
+            for (int j = 0; j < b; j++) {
+                targetClasses[j] = classOf(target.get(start + j), classes);
+            }
+
+            //pairs: kept in place (LCS), moved (equal but out of order) and modified in place (remaining by position)
+            int[] sourceMatch = new int[a];
+            int[] targetMatch = new int[b];
+            boolean[] kept = new boolean[a];
+            boolean[] moved = new boolean[a];
+            Arrays.fill(sourceMatch, -1);
+            Arrays.fill(targetMatch, -1);
+            if ((long) a * b <= MAX_LCS_CELLS) {
+                lcs(sourceClasses, targetClasses, sourceMatch, targetMatch, kept);
+            }
+
+            Map<Integer, LinkedList<Integer>> unmatched = new HashMap<Integer, LinkedList<Integer>>();
+            for (int i = 0; i < a; i++) {
+                if (sourceMatch[i] == -1) {
+                    LinkedList<Integer> list = unmatched.get(sourceClasses[i]);
+                    if (list == null) {
+                        list = new LinkedList<Integer>();
+                        unmatched.put(sourceClasses[i], list);
+                    }
+                    list.add(i);
+                }
+            }
+            for (int j = 0; j < b; j++) {
+                if (targetMatch[j] == -1) {
+                    LinkedList<Integer> list = unmatched.get(targetClasses[j]);
+                    if (list != null && !list.isEmpty()) {
+                        int i = list.removeFirst();
+                        sourceMatch[i] = j;
+                        targetMatch[j] = i;
+                        moved[i] = true;
+                    }
+                }
+            }
+
+            boolean[] modified = new boolean[a];
+            int i = 0;
+            int j = 0;
+            while (i < a || j < b) {
+                List<Integer> sourceGap = new ArrayList<Integer>();
+                List<Integer> targetGap = new ArrayList<Integer>();
+                for (; i < a && !kept[i]; i++) {
+                    if (sourceMatch[i] == -1) {
+                        sourceGap.add(i);
+                    }
+                }
+                for (; j < b && (targetMatch[j] == -1 || !kept[targetMatch[j]]); j++) {
+                    if (targetMatch[j] == -1) {
+                        targetGap.add(j);
+                    }
+                }
+                for (int k = 0; k < Math.min(sourceGap.size(), targetGap.size()); k++) {
+                    sourceMatch[sourceGap.get(k)] = targetGap.get(k);
+                    targetMatch[targetGap.get(k)] = sourceGap.get(k);
+                    modified[sourceGap.get(k)] = true;
+                }
+                i++;
+                j++;
+            }
+
+            //removals from the end keep indexes of remaining items valid
+            for (i = a - 1; i >= 0; i--) {
+                if (sourceMatch[i] == -1) {
+                    emit("remove", null, pointer + "/" + (start + i), null);
+                }
+            }
+
+            //moved items are placed right after their predecessor in target order, which is already in place by then
+            int[] rank = new int[a];
+            int[] byRank = new int[b];
+            int r = 0;
+            for (j = 0; j < b; j++) {
+                if (targetMatch[j] != -1) {
+                    rank[targetMatch[j]] = r;
+                    byRank[r++] = targetMatch[j];
+                }
+            }
+
+            //every item gets a slot at its source position and every moved item one more right after its predecessor,
+            //so that current indexes are counts of occupied slots before, kept in a Fenwick tree
+            int[] home = new int[a];
+            int[] destination = new int[a];
+            int slots = 0;
+            for (int k = 0; k < r && moved[byRank[k]]; k++) {
+                destination[byRank[k]] = slots++;
+            }
+            for (i = 0; i < a; i++) {
+                if (sourceMatch[i] != -1) {
+                    home[i] = slots++;
+                    if (!moved[i]) {
+                        for (int k = rank[i] + 1; k < r && moved[byRank[k]]; k++) {
+                            destination[byRank[k]] = slots++;
+                        }
+                    }
+                }
+            }
+            int[] occupied = new int[slots + 1];
+            for (i = 0; i < a; i++) {
+                if (sourceMatch[i] != -1) {
+                    occupy(occupied, home[i], 1);
+                }
+            }
+            for (int k = 0; k < r; k++) {
+                int item = byRank[k];
+                if (!moved[item]) {
+                    continue;
+                }
+                int from = countBefore(occupied, home[item]);
+                occupy(occupied, home[item], -1);
+                int to = countBefore(occupied, destination[item]);
+                occupy(occupied, destination[item], 1);
+                if (from != to) {
+                    emit("move", pointer + "/" + (start + from), pointer + "/" + (start + to), null);
+                }
+            }
+
+            for (j = 0; j < b; j++) {
+                if (targetMatch[j] == -1) {
+                    emit("add", null, pointer + "/" + (start + j), target.get(start + j));
+                }
+            }
+            for (j = 0; j < b; j++) {
+                int item = targetMatch[j];
+                if (item != -1 && modified[item]) {
+                    diff(source.get(start + item), target.get(start + j), pointer + "/" + (start + j));
+                }
+            }
+        }
+
+        private static void occupy(int[] occupied, int slot, int delta) {
+            for (int k = slot + 1; k < occupied.length; k += k & -k) {
+                occupied[k] += delta;
+            }
+        }
+
+        private static int countBefore(int[] occupied, int slot) {
+            int count = 0;
+            for (int k = slot; k > 0; k -= k & -k) {
+                count += occupied[k];
+            }
+            return count;
+        }
+
+        private static void lcs(int[] sourceClasses, int[] targetClasses, int[] sourceMatch, int[] targetMatch, boolean[] kept) {
+            int a = sourceClasses.length;
+            int b = targetClasses.length;
+            int[][] lengths = new int[a + 1][b + 1];
+            for (int i = a - 1; i >= 0; i--) {
+                for (int j = b - 1; j >= 0; j--) {
+                    if (sourceClasses[i] == targetClasses[j]) {
+                        lengths[i][j] = lengths[i + 1][j + 1] + 1;
+                    } else {
+                        lengths[i][j] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+                    }
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < a && j < b) {
+                if (sourceClasses[i] == targetClasses[j]) {
+                    sourceMatch[i] = j;
+                    targetMatch[j] = i;
+                    kept[i] = true;
+                    i++;
+                    j++;
+                } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        }
+
+        private int classOf(JsonNode node, Map<Key, Integer> classes) {
+            Key key = new Key(node, hash(node));
+            Integer id = classes.get(key);
+            if (id == null) {
+                id = classes.size();
+                classes.put(key, id);
+            }
+            return id;
+        }
+
+        private boolean same(JsonNode node1, JsonNode node2) {
+            return node1 == node2 || (hash(node1) == hash(node2) && NumericArrayNode.equal(node1, node2));
+        }
+
+        private int hash(JsonNode node) {
+            if (!node.isObject() && !node.isArray()) {
+                return node.hashCode();
+            }
+            Integer cached = hashes.get(node);
+            if (cached != null) {
+                return cached;
+            }
+            int hash;
+            if (node.isObject()) {
+                //field order does not matter for equality
+                hash = 0x5bd1e995;
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    hash += field.getKey().hashCode() * 31 ^ hash(field.getValue());
+                }
+            } else {
+                hash = 1;
+                for (int i = 0; i < node.size(); i++) {
+                    hash = 31 * hash + hash(node.get(i));
+                }
+            }
+            hashes.put(node, hash);
+            return hash;
+        }
+
+        private void emit(String op, String from, String path, JsonNode value) {
+            ObjectNode operation = nodeFactory.objectNode();
+            operation.put("op", op);
+            if (from != null) {
+                operation.put("from", from);
+            }
+            operation.put("path", path);
+            if (value != null) {
+                operation.set("value", value.deepCopy());
+            }
+            patch.add(operation);
+        }
+    }
+
+    private static final class Key {
+        private final JsonNode node;
+        private final int hash;
+
+        Key(JsonNode node, int hash) {
+            this.node = node;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && NumericArrayNode.equal(node, other.node);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
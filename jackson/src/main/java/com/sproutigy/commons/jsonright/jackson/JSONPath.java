@@ -0,0 +1,1039 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+//JSONPath subset: $ root, .name, ['name'], .*, [*], [n], [start:end:step], ..selector and [?(filter)]
+public final class JSONPath {
+
+    private final String expression;
+    private final Step[] steps;
+
+    private JSONPath(String expression, Step[] steps) {
+        this.expression = expression;
+        this.steps = steps;
+    }
+
+    public static JSONPath compile(String expression) {
+        if (expression == null) {
+            throw new NullPointerException("expression == null");
+        }
+        return new JSONPath(expression, new Compiler(expression).compile());
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public Iterator<JsonNode> evaluate(JsonNode root) {
+        if (root == null) {
+            return Collections.<JsonNode>emptyList().iterator();
+        }
+        return evaluate(root, 0);
+    }
+
+    //parser is positioned before or at the first token of the value to be queried
+    Iterator<JsonNode> evaluate(JsonParser parser, ObjectMapper objectMapper, int numericArrayThreshold) {
+        return new StreamingMatcher(parser, new NodeTreeReader(objectMapper, null, numericArrayThreshold));
+    }
+
+    private Iterator<JsonNode> evaluate(JsonNode node, int step) {
+        if (step == steps.length) {
+            return Collections.singletonList(node).iterator();
+        }
+        return new ChainIterator(steps[step].select(node), step + 1);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private final class ChainIterator implements Iterator<JsonNode> {
+        private final Iterator<JsonNode> source;
+        private final int nextStep;
+        private Iterator<JsonNode> current;
+
+        ChainIterator(Iterator<JsonNode> source, int nextStep) {
+            this.source = source;
+            this.nextStep = nextStep;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                if (!source.hasNext()) {
+                    return false;
+                }
+                current = evaluate(source.next(), nextStep);
+            }
+            return true;
+        }
+
+        @Override
+        public JsonNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    //pulls tokens until the next match, materializing only values that are matched or need a tree to be tested
+    private final class StreamingMatcher implements Iterator<JsonNode> {
+        private final JsonParser parser;
+        private final NodeTreeReader reader;
+        private final List<Frame> stack = new ArrayList<Frame>();
+        private Iterator<JsonNode> pending;
+        private JsonNode next;
+        private boolean started;
+
+        StreamingMatcher(JsonParser parser, NodeTreeReader reader) {
+            this.parser = parser;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = advance();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public JsonNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JsonNode result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private JsonNode advance() throws IOException {
+            while (true) {
+                if (pending != null) {
+                    if (pending.hasNext()) {
+                        return pending.next();
+                    }
+                    pending = null;
+                }
+
+                if (!started) {
+                    started = true;
+                    JsonToken token = parser.getCurrentToken();
+                    if (token == null) {
+                        token = parser.nextToken();
+                    }
+                    if (token == null) {
+                        parser.close();
+                        return null;
+                    }
+                    handle(token, new int[] {0});
+                    continue;
+                }
+
+                if (stack.isEmpty()) {
+                    parser.close();
+                    return null;
+                }
+
+                Frame frame = stack.get(stack.size() - 1);
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                if (frame.array) {
+                    handle(token, childStates(frame.states, null, frame.index++));
+                } else {
+                    String fieldName = parser.getCurrentName();
+                    handle(parser.nextToken(), childStates(frame.states, fieldName, -1));
+                }
+            }
+        }
+
+        private void handle(JsonToken token, int[] states) throws IOException {
+            if (states.length == 0) {
+                parser.skipChildren();
+                return;
+            }
+
+            int[] closed = closure(states);
+            boolean materialize = false;
+            boolean descend = false;
+            for (int state : closed) {
+                if (state < 0 || state == steps.length || steps[state].needsTree() || isOrderedDescent(state)) {
+                    materialize = true;
+                } else if (token == JsonToken.START_OBJECT ? steps[state].selectsFromObject() : steps[state].selectsFromArray()) {
+                    descend = true;
+                }
+            }
+
+            if (materialize) {
+                //states added by closure are already covered by evaluation of descendants on the tree
+                pending = evaluateStates(reader.readValue(parser, token), states);
+            } else if (descend && (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)) {
+                stack.add(new Frame(closed, token == JsonToken.START_ARRAY));
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        //descent followed by a step selecting many children of one container yields all of them before their
+        //descendants, which cannot be done in a single pass over the tokens
+        private boolean isOrderedDescent(int state) {
+            return steps[state] instanceof DescendStep && state + 1 < steps.length && !steps[state + 1].selectsOne();
+        }
+
+        private Iterator<JsonNode> evaluateStates(JsonNode node, int[] states) {
+            //states matching the node itself go first, so results come in document order as on the tree
+            List<Iterator<JsonNode>> iterators = new ArrayList<Iterator<JsonNode>>(states.length);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int state : states) {
+                    int step = state < 0 ? ~state + 1 : state;
+                    if ((step == steps.length) != (pass == 0)) {
+                        continue;
+                    }
+                    if (state < 0) {
+                        //filter candidate: the node itself has to pass the filter of the step
+                        if (((FilterStep) steps[~state]).predicate.test(node)) {
+                            iterators.add(evaluate(node, step));
+                        }
+                    } else {
+                        iterators.add(evaluate(node, state));
+                    }
+                }
+            }
+            return new ConcatIterator(iterators.iterator());
+        }
+
+        private int[] closure(int[] states) {
+            int[] result = states;
+            for (int i = 0; i < result.length; i++) {
+                int state = result[i];
+                if (state >= 0 && state < steps.length && steps[state] instanceof DescendStep) {
+                    result = addState(result, state + 1);
+                }
+            }
+            return result;
+        }
+
+        private int[] childStates(int[] states, String fieldName, int index) {
+            int[] result = new int[0];
+            for (int state : states) {
+                Step step = steps[state];
+                if (step instanceof DescendStep) {
+                    result = addState(result, state);
+                } else if (step instanceof FilterStep) {
+                    result = addState(result, ~state);
+                } else if (fieldName != null ? step.matchesField(fieldName) : step.matchesIndex(index)) {
+                    result = addState(result, state + 1);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static int[] addState(int[] states, int state) {
+        for (int s : states) {
+            if (s == state) {
+                return states;
+            }
+        }
+        int[] result = new int[states.length + 1];
+        System.arraycopy(states, 0, result, 0, states.length);
+        result[states.length] = state;
+        return result;
+    }
+
+    private static final class Frame {
+        final int[] states;
+        final boolean array;
+        int index;
+
+        Frame(int[] states, boolean array) {
+            this.states = states;
+            this.array = array;
+        }
+    }
+
+    private static final class ConcatIterator implements Iterator<JsonNode> {
+        private final Iterator<Iterator<JsonNode>> iterators;
+        private Iterator<JsonNode> current;
+
+        ConcatIterator(Iterator<Iterator<JsonNode>> iterators) {
+            this.iterators = iterators;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                if (!iterators.hasNext()) {
+                    return false;
+                }
+                current = iterators.next();
+            }
+            return true;
+        }
+
+        @Override
+        public JsonNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static abstract class Step {
+        abstract Iterator<JsonNode> select(JsonNode node);
+
+        boolean matchesField(String fieldName) {
+            return false;
+        }
+
+        boolean matchesIndex(int index) {
+            return false;
+        }
+
+        boolean selectsFromObject() {
+            return false;
+        }
+
+        boolean selectsFromArray() {
+            return false;
+        }
+
+        //streaming matcher cannot tell matching children without knowing the whole container
+        boolean needsTree() {
+            return false;
+        }
+
+        //at most one child of a container is selected
+        boolean selectsOne() {
+            return false;
+        }
+    }
+
+    private static final class FieldStep extends Step {
+        private final String name;
+
+        FieldStep(String name) {
+            this.name = name;
+        }
+
+        @Override
+        Iterator<JsonNode> select(JsonNode node) {
+            JsonNode child = node.isObject() ? node.get(name) : null;
+            if (child == null) {
+                return Collections.<JsonNode>emptyList().iterator();
+            }
+            return Collections.singletonList(child).iterator();
+        }
+
+        @Override
+        boolean matchesField(String fieldName) {
+            return name.equals(fieldName);
+        }
+
+        @Override
+        boolean selectsFromObject() {
+            return true;
+        }
+
+        @Override
+        boolean selectsOne() {
+            return true;
+        }
+    }
+
+    private static final class WildcardStep extends Step {
+        @Override
+        Iterator<JsonNode> select(JsonNode node) {
+            return node.elements();
+        }
+
+        @Override
+        boolean matchesField(String fieldName) {
+            return true;
+        }
+
+        @Override
+        boolean matchesIndex(int index) {
+            return true;
+        }
+
+        @Override
+        boolean selectsFromObject() {
+            return true;
+        }
+
+        @Override
+        boolean selectsFromArray() {
+            return true;
+        }
+    }
+
+    private static final class IndexStep extends Step {
+        private final int index;
+
+        IndexStep(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Iterator<JsonNode> select(JsonNode node) {
+            JsonNode child = null;
+            if (node.isArray()) {
+                child = node.get(index < 0 ? node.size() + index : index);
+            }
+            if (child == null) {
+                return Collections.<JsonNode>emptyList().iterator();
+            }
+            return Collections.singletonList(child).iterator();
+        }
+
+        @Override
+        boolean matchesIndex(int i) {
+            return index == i;
+        }
+
+        @Override
+        boolean selectsFromArray() {
+            return true;
+        }
+
+        @Override
+        boolean needsTree() {
+            return index < 0;
+        }
+
+        @Override
+        boolean selectsOne() {
+            return true;
+        }
+    }
+
+    private static final class SliceStep extends Step {
+        private final Integer start;
+        private final Integer end;
+        private final int step;
+
+        SliceStep(Integer start, Integer end, int step) {
+            this.start = start;
+            this.end = end;
+            this.step = step;
+        }
+
+        @Override
+        Iterator<JsonNode> select(final JsonNode node) {
+            if (!node.isArray()) {
+                return Collections.<JsonNode>emptyList().iterator();
+            }
+            final int size = node.size();
+            final int from;
+            final int to;
+            if (step > 0) {
+                from = start == null ? 0 : clamp(start, size, 0, size);
+                to = end == null ? size : clamp(end, size, 0, size);
+            } else {
+                from = start == null ? size - 1 : clamp(start, size, -1, size - 1);
+                to = end == null ? -1 : clamp(end, size, -1, size - 1);
+            }
+            return new Iterator<JsonNode>() {
+                private int i = from;
+
+                @Override
+                public boolean hasNext() {
+                    return step > 0 ? i < to : i > to;
+                }
+
+                @Override
+                public JsonNode next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    JsonNode child = node.get(i);
+                    i += step;
+                    return child;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        private static int clamp(int index, int size, int min, int max) {
+            if (index < 0) {
+                index += size;
+            }
+            return Math.max(min, Math.min(max, index));
+        }
+
+        @Override
+        boolean matchesIndex(int index) {
+            int from = start == null ? 0 : start;
+            return index >= from && (end == null || index < end) && (index - from) % step == 0;
+        }
+
+        @Override
+        boolean selectsFromArray() {
+            return true;
+        }
+
+        @Override
+        boolean needsTree() {
+            return step < 0 || (start != null && start < 0) || (end != null && end < 0);
+        }
+    }
+
+    private static final class DescendStep extends Step {
+        @Override
+        Iterator<JsonNode> select(final JsonNode node) {
+            //the node itself and all of its descendants, depth-first
+            return new Iterator<JsonNode>() {
+                private final Deque<Iterator<JsonNode>> stack = new ArrayDeque<Iterator<JsonNode>>();
+                private JsonNode self = node;
+
+                @Override
+                public boolean hasNext() {
+                    if (self != null) {
+                        return true;
+                    }
+                    while (!stack.isEmpty() && !stack.peek().hasNext()) {
+                        stack.pop();
+                    }
+                    return !stack.isEmpty();
+                }
+
+                @Override
+                public JsonNode next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    JsonNode result = self;
+                    if (result != null) {
+                        self = null;
+                    } else {
+                        result = stack.peek().next();
+                    }
+                    if (result.isContainerNode() && result.size() > 0) {
+                        stack.push(result.elements());
+                    }
+                    return result;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        boolean selectsFromObject() {
+            return true;
+        }
+
+        @Override
+        boolean selectsFromArray() {
+            return true;
+        }
+    }
+
+    private static final class FilterStep extends Step {
+        private final Predicate predicate;
+
+        FilterStep(Predicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        Iterator<JsonNode> select(JsonNode node) {
+            final Iterator<JsonNode> elements = node.elements();
+            return new Iterator<JsonNode>() {
+                private JsonNode next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && elements.hasNext()) {
+                        JsonNode candidate = elements.next();
+                        if (predicate.test(candidate)) {
+                            next = candidate;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public JsonNode next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    JsonNode result = next;
+                    next = null;
+                    return result;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        boolean selectsFromObject() {
+            return true;
+        }
+
+        @Override
+        boolean selectsFromArray() {
+            return true;
+        }
+    }
+
+    private static abstract class Predicate {
+        abstract boolean test(JsonNode node);
+    }
+
+    private static final class Or extends Predicate {
+        private final Predicate left;
+        private final Predicate right;
+
+        Or(Predicate left, Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(JsonNode node) {
+            return left.test(node) || right.test(node);
+        }
+    }
+
+    private static final class And extends Predicate {
+        private final Predicate left;
+        private final Predicate right;
+
+        And(Predicate left, Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(JsonNode node) {
+            return left.test(node) && right.test(node);
+        }
+    }
+
+    private static final class Not extends Predicate {
+        private final Predicate predicate;
+
+        Not(Predicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean test(JsonNode node) {
+            return !predicate.test(node);
+        }
+    }
+
+    private static final class Exists extends Predicate {
+        private final Operand operand;
+
+        Exists(Operand operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(JsonNode node) {
+            JsonNode value = operand.resolve(node);
+            return value != null && !value.isNull() && !(value.isBoolean() && !value.booleanValue());
+        }
+    }
+
+    private static final class Comparison extends Predicate {
+        private final Operand left;
+        private final String operator;
+        private final Operand right;
+
+        Comparison(Operand left, String operator, Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(JsonNode node) {
+            JsonNode a = left.resolve(node);
+            JsonNode b = right.resolve(node);
+            if (a == null || b == null) {
+                return operator.equals("!=");
+            }
+
+            Integer order = null;
+            if (a.isNumber() && b.isNumber()) {
+                order = a.decimalValue().compareTo(b.decimalValue());
+            } else if (a.isTextual() && b.isTextual()) {
+                order = a.textValue().compareTo(b.textValue());
+            }
+
+            if (operator.equals("==")) {
+                return order != null ? order == 0 : NumericArrayNode.equal(a, b);
+            }
+            if (operator.equals("!=")) {
+                return order != null ? order != 0 : !NumericArrayNode.equal(a, b);
+            }
+            if (order == null) {
+                return false;
+            }
+            if (operator.equals("<")) {
+                return order < 0;
+            }
+            if (operator.equals("<=")) {
+                return order <= 0;
+            }
+            if (operator.equals(">")) {
+                return order > 0;
+            }
+            return order >= 0;
+        }
+    }
+
+    private static abstract class Operand {
+        abstract JsonNode resolve(JsonNode node);
+    }
+
+    private static final class Literal extends Operand {
+        private final JsonNode value;
+
+        Literal(JsonNode value) {
+            this.value = value;
+        }
+
+        @Override
+        JsonNode resolve(JsonNode node) {
+            return value;
+        }
+    }
+
+    private static final class Relative extends Operand {
+        private final Object[] segments;
+
+        Relative(Object[] segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        JsonNode resolve(JsonNode node) {
+            for (Object segment : segments) {
+                if (node == null) {
+                    return null;
+                }
+                if (segment instanceof String) {
+                    node = node.isObject() ? node.get((String) segment) : null;
+                } else {
+                    int index = (Integer) segment;
+                    node = node.isArray() ? node.get(index < 0 ? node.size() + index : index) : null;
+                }
+            }
+            return node;
+        }
+    }
+
+    private static final class Compiler {
+        private final String expression;
+        private int pos;
+
+        Compiler(String expression) {
+            this.expression = expression;
+        }
+
+        Step[] compile() {
+            List<Step> steps = new ArrayList<Step>();
+            if (peek() == '$') {
+                pos++;
+            } else if (pos < expression.length() && peek() != '.' && peek() != '[') {
+                //plain path like a.b[1] is relative to the root
+                steps.add(new FieldStep(name()));
+            }
+
+            while (pos < expression.length()) {
+                char c = peek();
+                if (c == '.') {
+                    pos++;
+                    if (peek() == '.') {
+                        pos++;
+                        steps.add(new DescendStep());
+                        if (peek() == '[') {
+                            steps.add(bracket());
+                            continue;
+                        }
+                    }
+                    if (peek() == '*') {
+                        pos++;
+                        steps.add(new WildcardStep());
+                    } else {
+                        steps.add(new FieldStep(name()));
+                    }
+                } else if (c == '[') {
+                    steps.add(bracket());
+                } else {
+                    throw malformed();
+                }
+            }
+            return steps.toArray(new Step[steps.size()]);
+        }
+
+        private Step bracket() {
+            expect('[');
+            Step step;
+            char c = peek();
+            if (c == '*') {
+                pos++;
+                step = new WildcardStep();
+            } else if (c == '\'' || c == '"') {
+                step = new FieldStep(quoted());
+            } else if (c == '?') {
+                pos++;
+                expect('(');
+                step = new FilterStep(or());
+                expect(')');
+            } else {
+                Integer start = optionalInt();
+                if (peek() == ':') {
+                    pos++;
+                    Integer end = optionalInt();
+                    int sliceStep = 1;
+                    if (peek() == ':') {
+                        pos++;
+                        Integer parsedStep = optionalInt();
+                        if (parsedStep != null) {
+                            sliceStep = parsedStep;
+                        }
+                    }
+                    if (sliceStep == 0) {
+                        throw malformed();
+                    }
+                    step = new SliceStep(start, end, sliceStep);
+                } else if (start != null) {
+                    step = new IndexStep(start);
+                } else {
+                    throw malformed();
+                }
+            }
+            expect(']');
+            return step;
+        }
+
+        private Predicate or() {
+            Predicate predicate = and();
+            while (skipSpaces() && expression.startsWith("||", pos)) {
+                pos += 2;
+                predicate = new Or(predicate, and());
+            }
+            return predicate;
+        }
+
+        private Predicate and() {
+            Predicate predicate = unary();
+            while (skipSpaces() && expression.startsWith("&&", pos)) {
+                pos += 2;
+                predicate = new And(predicate, unary());
+            }
+            return predicate;
+        }
+
+        private Predicate unary() {
+            skipSpaces();
+            if (peek() == '!' && !expression.startsWith("!=", pos)) {
+                pos++;
+                return new Not(unary());
+            }
+            if (peek() == '(') {
+                pos++;
+                Predicate predicate = or();
+                skipSpaces();
+                expect(')');
+                return predicate;
+            }
+
+            Operand left = operand();
+            skipSpaces();
+            String operator = null;
+            for (String candidate : new String[] {"==", "!=", "<=", ">=", "<", ">"}) {
+                if (expression.startsWith(candidate, pos)) {
+                    operator = candidate;
+                    break;
+                }
+            }
+            if (operator == null) {
+                return new Exists(left);
+            }
+            pos += operator.length();
+            return new Comparison(left, operator, operand());
+        }
+
+        private Operand operand() {
+            skipSpaces();
+            char c = peek();
+            if (c == '@') {
+                pos++;
+                List<Object> segments = new ArrayList<Object>();
+                while (true) {
+                    if (peek() == '.') {
+                        pos++;
+                        segments.add(name());
+                    } else if (peek() == '[') {
+                        pos++;
+                        if (peek() == '\'' || peek() == '"') {
+                            segments.add(quoted());
+                        } else {
+                            Integer index = optionalInt();
+                            if (index == null) {
+                                throw malformed();
+                            }
+                            segments.add(index);
+                        }
+                        expect(']');
+                    } else {
+                        break;
+                    }
+                }
+                return new Relative(segments.toArray());
+            }
+            if (c == '\'' || c == '"') {
+                return new Literal(TextNode.valueOf(quoted()));
+            }
+            if (expression.startsWith("true", pos)) {
+                pos += 4;
+                return new Literal(BooleanNode.TRUE);
+            }
+            if (expression.startsWith("false", pos)) {
+                pos += 5;
+                return new Literal(BooleanNode.FALSE);
+            }
+            if (expression.startsWith("null", pos)) {
+                pos += 4;
+                return new Literal(NullNode.getInstance());
+            }
+            int start = pos;
+            while (pos < expression.length() && "+-.0123456789eE".indexOf(peek()) != -1) {
+                pos++;
+            }
+            try {
+                return new Literal(DecimalNode.valueOf(new BigDecimal(expression.substring(start, pos))));
+            } catch (NumberFormatException notNumber) {
+                throw malformed();
+            }
+        }
+
+        private String name() {
+            int start = pos;
+            while (pos < expression.length() && ".[]()=!<>&|' \"".indexOf(peek()) == -1) {
+                pos++;
+            }
+            if (pos == start) {
+                throw malformed();
+            }
+            return expression.substring(start, pos);
+        }
+
+        private String quoted() {
+            char quote = peek();
+            pos++;
+            int end = expression.indexOf(quote, pos);
+            if (end == -1) {
+                throw malformed();
+            }
+            String s = expression.substring(pos, end);
+            pos = end + 1;
+            return s;
+        }
+
+        private Integer optionalInt() {
+            skipSpaces();
+            int start = pos;
+            if (peek() == '-') {
+                pos++;
+            }
+            while (pos < expression.length() && Character.isDigit(peek())) {
+                pos++;
+            }
+            if (pos == start) {
+                return null;
+            }
+            try {
+                Integer value = Integer.parseInt(expression.substring(start, pos));
+                skipSpaces();
+                return value;
+            } catch (NumberFormatException notInteger) {
+                throw malformed();
+            }
+        }
+
+        private boolean skipSpaces() {
+            while (pos < expression.length() && expression.charAt(pos) == ' ') {
+                pos++;
+            }
+            return true;
+        }
+
+        private char peek() {
+            return pos < expression.length() ? expression.charAt(pos) : '\0';
+        }
+
+        private void expect(char c) {
+            skipSpaces();
+            if (peek() != c) {
+                throw malformed();
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException malformed() {
+            return new IllegalArgumentException("Malformed JSON path");
+        }
+    }
+}
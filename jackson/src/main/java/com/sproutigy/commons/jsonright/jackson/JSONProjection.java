@@ -0,0 +1,222 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class JSONProjection {
+
+    private final String[] paths;
+    private final Node root = new Node();
+
+    private JSONProjection(String[] paths) {
+        this.paths = paths.clone();
+        for (String path : paths) {
+            add(path);
+        }
+    }
+
+    public static JSONProjection compile(String... paths) {
+        if (paths == null) {
+            throw new NullPointerException("paths == null");
+        }
+        return new JSONProjection(paths);
+    }
+
+    public String[] getPaths() {
+        return paths.clone();
+    }
+
+    //builds a tree of the value at the parser's current token, skipping everything not covered by the projection
+    JsonNode read(JsonParser parser, ObjectMapper objectMapper, int numericArrayThreshold) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            return null;
+        }
+        NodeTreeReader reader = new NodeTreeReader(objectMapper, null, numericArrayThreshold);
+        List<Node> states = new ArrayList<Node>(1);
+        states.add(root);
+        return readValue(parser, token, states, reader, objectMapper.getNodeFactory());
+    }
+
+    private JsonNode readValue(JsonParser parser, JsonToken token, List<Node> states, NodeTreeReader reader, JsonNodeFactory nodeFactory) throws IOException {
+        for (Node state : states) {
+            if (state.all) {
+                return reader.readValue(parser, token);
+            }
+        }
+
+        if (token == JsonToken.START_OBJECT) {
+            ObjectNode objectNode = nodeFactory.objectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                token = parser.nextToken();
+                List<Node> next = new ArrayList<Node>(2);
+                for (Node state : states) {
+                    state.matchField(fieldName, next);
+                }
+                JsonNode value = null;
+                if (next.isEmpty()) {
+                    parser.skipChildren();
+                } else {
+                    value = readValue(parser, token, next, reader, nodeFactory);
+                }
+                if (value != null) {
+                    reader.setField(parser, objectNode, fieldName, value);
+                }
+            }
+            return objectNode;
+        }
+
+        if (token == JsonToken.START_ARRAY) {
+            //skipped items are kept as nulls, so that the projected ones stay at their indexes
+            ArrayNode arrayNode = nodeFactory.arrayNode();
+            int index = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                List<Node> next = new ArrayList<Node>(2);
+                for (Node state : states) {
+                    state.matchIndex(index, next);
+                }
+                JsonNode value = null;
+                if (next.isEmpty()) {
+                    parser.skipChildren();
+                } else {
+                    value = readValue(parser, token, next, reader, nodeFactory);
+                }
+                arrayNode.add(value != null ? value : nodeFactory.nullNode());
+                index++;
+            }
+            return arrayNode;
+        }
+
+        //primitive where a container was expected by the projection
+        return null;
+    }
+
+    private void add(String path) {
+        if (path == null) {
+            throw new NullPointerException("path == null");
+        }
+        if (path.startsWith(".") || path.endsWith(".") || path.startsWith("]") || path.endsWith("[")) {
+            throw new IllegalArgumentException("Malformed JSON path");
+        }
+
+        Node node = root;
+        int pos = 0;
+        while (pos < path.length()) {
+            int end;
+            if (path.charAt(pos) == '[') {
+                end = path.indexOf(']', pos);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+                String indexer = path.substring(pos + 1, end);
+                end++;
+                if (indexer.equals("*")) {
+                    if (node.anyIndex == null) {
+                        node.anyIndex = new Node();
+                    }
+                    node = node.anyIndex;
+                } else {
+                    int arrayIndex;
+                    try {
+                        arrayIndex = Integer.parseInt(indexer);
+                    } catch (NumberFormatException notInteger) {
+                        throw new IllegalArgumentException("Malformed JSON path");
+                    }
+                    if (node.indexes == null) {
+                        node.indexes = new HashMap<Integer, Node>();
+                    }
+                    Node child = node.indexes.get(arrayIndex);
+                    if (child == null) {
+                        child = new Node();
+                        node.indexes.put(arrayIndex, child);
+                    }
+                    node = child;
+                }
+            } else {
+                int nextDot = path.indexOf('.', pos + 1);
+                int nextIndexer = path.indexOf('[', pos + 1);
+                end = path.length();
+                if (nextDot != -1) {
+                    end = nextDot;
+                }
+                if (nextIndexer != -1 && nextIndexer < end) {
+                    end = nextIndexer;
+                }
+                String fieldName = path.substring(pos, end);
+                if (fieldName.equals("*")) {
+                    if (node.anyField == null) {
+                        node.anyField = new Node();
+                    }
+                    node = node.anyField;
+                } else {
+                    if (node.fields == null) {
+                        node.fields = new HashMap<String, Node>();
+                    }
+                    Node child = node.fields.get(fieldName);
+                    if (child == null) {
+                        child = new Node();
+                        node.fields.put(fieldName, child);
+                    }
+                    node = child;
+                }
+            }
+
+            pos = end;
+            if (pos < path.length() && path.charAt(pos) == '.') {
+                pos++;
+            }
+        }
+        //path ends here, so the whole subtree is kept
+        node.all = true;
+    }
+
+    @Override
+    public String toString() {
+        return "JSONProjection" + Arrays.toString(paths);
+    }
+
+    private static final class Node {
+        private boolean all;
+        private Map<String, Node> fields;
+        private Node anyField;
+        private Map<Integer, Node> indexes;
+        private Node anyIndex;
+
+        void matchField(String fieldName, List<Node> matches) {
+            if (fields != null) {
+                Node child = fields.get(fieldName);
+                if (child != null) {
+                    matches.add(child);
+                }
+            }
+            if (anyField != null) {
+                matches.add(anyField);
+            }
+        }
+
+        void matchIndex(int index, List<Node> matches) {
+            if (indexes != null) {
+                Node child = indexes.get(index);
+                if (child != null) {
+                    matches.add(child);
+                }
+            }
+            if (anyIndex != null) {
+                matches.add(anyIndex);
+            }
+        }
+    }
+}
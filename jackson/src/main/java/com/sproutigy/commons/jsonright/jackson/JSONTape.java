@@ -0,0 +1,429 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class JSONTape {
+
+    //each tape entry: type in the highest byte, payload in the lower 56 bits
+    private static final int TYPE_SHIFT = 56;
+    private static final long PAYLOAD_MASK = (1L << TYPE_SHIFT) - 1;
+
+    //container payload: index after the matching end in the lower 32 bits, size in the next 24 bits
+    private static final long SKIP_MASK = 0xFFFFFFFFL;
+    private static final int SIZE_SHIFT = 32;
+    private static final int SIZE_OVERFLOW = 0xFFFFFF;
+
+    private static final long MIN_INLINE = -(1L << (TYPE_SHIFT - 1));
+    private static final long MAX_INLINE = (1L << (TYPE_SHIFT - 1)) - 1;
+
+    static final int TYPE_OBJECT = 1;
+    static final int TYPE_ARRAY = 2;
+    static final int TYPE_KEY = 3;
+    static final int TYPE_STRING = 4;
+    static final int TYPE_LONG = 5;
+    static final int TYPE_LONG_EXTENDED = 6;
+    static final int TYPE_DOUBLE = 7;
+    static final int TYPE_BIG_NUMBER = 8;
+    static final int TYPE_TRUE = 9;
+    static final int TYPE_FALSE = 10;
+    static final int TYPE_NULL = 11;
+
+    private final long[] tape;
+    private final String[] strings;
+    private final Number[] numbers;
+
+    private JSONTape(long[] tape, String[] strings, Number[] numbers) {
+        this.tape = tape;
+        this.strings = strings;
+        this.numbers = numbers;
+    }
+
+    static JSONTape parse(JsonParser parser) throws IOException {
+        Builder builder = new Builder();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            builder.add(token, parser);
+        }
+        return builder.build();
+    }
+
+    int type(int index) {
+        return (int) (tape[index] >>> TYPE_SHIFT);
+    }
+
+    int size(int index) {
+        int type = type(index);
+        if (type != TYPE_OBJECT && type != TYPE_ARRAY) {
+            return 0;
+        }
+        int size = (int) ((tape[index] & PAYLOAD_MASK) >>> SIZE_SHIFT);
+        if (size == SIZE_OVERFLOW) {
+            size = 0;
+            int end = skip(index) - 1;
+            for (int i = index + 1; i < end; i = skip(i)) {
+                if (type(i) != TYPE_KEY) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    boolean isNull(int index) {
+        return type(index) == TYPE_NULL;
+    }
+
+    //returns tape index of a value resolved by the path or -1 when not found
+    int find(String path) {
+        int index = 0;
+        int pos = 0;
+        while (pos < path.length()) {
+            int end;
+            if (path.charAt(pos) == '[') {
+                end = path.indexOf(']', pos);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+                String indexer = path.substring(pos + 1, end);
+                end++;
+                if (type(index) != TYPE_ARRAY || indexer.isEmpty()) {
+                    return -1;
+                }
+                int arrayIndex;
+                try {
+                    arrayIndex = Integer.parseInt(indexer);
+                } catch (NumberFormatException notInteger) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+                index = arrayItem(index, arrayIndex);
+            } else {
+                int nextDot = path.indexOf('.', pos + 1);
+                int nextIndexer = path.indexOf('[', pos + 1);
+                end = path.length();
+                if (nextDot != -1) {
+                    end = nextDot;
+                }
+                if (nextIndexer != -1 && nextIndexer < end) {
+                    end = nextIndexer;
+                }
+                if (type(index) != TYPE_OBJECT) {
+                    if (type(index) == TYPE_NULL) {
+                        return -1;
+                    }
+                    throw new IllegalStateException("Cannot change type of a root node");
+                }
+                index = objectField(index, path, pos, end);
+            }
+
+            if (index == -1) {
+                return -1;
+            }
+
+            pos = end;
+            if (pos < path.length() && path.charAt(pos) == '.') {
+                pos++;
+                if (pos == path.length()) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+            }
+        }
+        return index;
+    }
+
+    private int arrayItem(int arrayIndex, int itemIndex) {
+        if (itemIndex < 0) {
+            return -1;
+        }
+        int end = skip(arrayIndex) - 1;
+        int i = arrayIndex + 1;
+        for (int n = 0; n < itemIndex && i < end; n++) {
+            i = skip(i);
+        }
+        return i < end ? i : -1;
+    }
+
+    private int objectField(int objectIndex, String path, int nameStart, int nameEnd) {
+        int nameLength = nameEnd - nameStart;
+        int end = skip(objectIndex) - 1;
+        int i = objectIndex + 1;
+        while (i < end) {
+            String key = strings[(int) (tape[i] & PAYLOAD_MASK)];
+            if (key.length() == nameLength && path.regionMatches(nameStart, key, 0, nameLength)) {
+                return i + 1;
+            }
+            i = skip(i + 1);
+        }
+        return -1;
+    }
+
+    //returns index of the entry following the value at the given index
+    private int skip(int index) {
+        switch (type(index)) {
+            case TYPE_OBJECT:
+            case TYPE_ARRAY:
+                return (int) (tape[index] & SKIP_MASK);
+            case TYPE_LONG_EXTENDED:
+            case TYPE_DOUBLE:
+                return index + 2;
+            default:
+                return index + 1;
+        }
+    }
+
+    JsonNode toNode(int index, JsonNodeFactory nodeFactory) {
+        long entry = tape[index];
+        switch (type(index)) {
+            case TYPE_OBJECT: {
+                ObjectNode objectNode = nodeFactory.objectNode();
+                int end = skip(index) - 1;
+                for (int i = index + 1; i < end; i = skip(i + 1)) {
+                    objectNode.set(strings[(int) (tape[i] & PAYLOAD_MASK)], toNode(i + 1, nodeFactory));
+                }
+                return objectNode;
+            }
+            case TYPE_ARRAY: {
+                ArrayNode arrayNode = nodeFactory.arrayNode();
+                int end = skip(index) - 1;
+                for (int i = index + 1; i < end; i = skip(i)) {
+                    arrayNode.add(toNode(i, nodeFactory));
+                }
+                return arrayNode;
+            }
+            case TYPE_STRING:
+                return nodeFactory.textNode(strings[(int) (entry & PAYLOAD_MASK)]);
+            case TYPE_LONG:
+            case TYPE_LONG_EXTENDED:
+                long v = longValue(index);
+                if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+                    return nodeFactory.numberNode((int) v);
+                }
+                return nodeFactory.numberNode(v);
+            case TYPE_DOUBLE:
+                return nodeFactory.numberNode(Double.longBitsToDouble(tape[index + 1]));
+            case TYPE_BIG_NUMBER:
+                Number number = numbers[(int) (entry & PAYLOAD_MASK)];
+                if (number instanceof BigInteger) {
+                    return nodeFactory.numberNode((BigInteger) number);
+                }
+                return nodeFactory.numberNode((BigDecimal) number);
+            case TYPE_TRUE:
+                return nodeFactory.booleanNode(true);
+            case TYPE_FALSE:
+                return nodeFactory.booleanNode(false);
+            default:
+                return nodeFactory.nullNode();
+        }
+    }
+
+    private long longValue(int index) {
+        if (type(index) == TYPE_LONG_EXTENDED) {
+            return tape[index + 1];
+        }
+        return (tape[index] << (64 - TYPE_SHIFT)) >> (64 - TYPE_SHIFT);
+    }
+
+    void write(JsonGenerator generator, int index) throws IOException {
+        long entry = tape[index];
+        switch (type(index)) {
+            case TYPE_OBJECT: {
+                generator.writeStartObject();
+                int end = skip(index) - 1;
+                for (int i = index + 1; i < end; i = skip(i + 1)) {
+                    generator.writeFieldName(strings[(int) (tape[i] & PAYLOAD_MASK)]);
+                    write(generator, i + 1);
+                }
+                generator.writeEndObject();
+                break;
+            }
+            case TYPE_ARRAY: {
+                generator.writeStartArray();
+                int end = skip(index) - 1;
+                for (int i = index + 1; i < end; i = skip(i)) {
+                    write(generator, i);
+                }
+                generator.writeEndArray();
+                break;
+            }
+            case TYPE_STRING:
+                generator.writeString(strings[(int) (entry & PAYLOAD_MASK)]);
+                break;
+            case TYPE_LONG:
+            case TYPE_LONG_EXTENDED:
+                generator.writeNumber(longValue(index));
+                break;
+            case TYPE_DOUBLE:
+                generator.writeNumber(Double.longBitsToDouble(tape[index + 1]));
+                break;
+            case TYPE_BIG_NUMBER:
+                Number number = numbers[(int) (entry & PAYLOAD_MASK)];
+                if (number instanceof BigInteger) {
+                    generator.writeNumber((BigInteger) number);
+                } else {
+                    generator.writeNumber((BigDecimal) number);
+                }
+                break;
+            case TYPE_TRUE:
+                generator.writeBoolean(true);
+                break;
+            case TYPE_FALSE:
+                generator.writeBoolean(false);
+                break;
+            default:
+                generator.writeNull();
+        }
+    }
+
+    String toString(int index) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonGenerator generator = JSON.getDefaultObjectMapper().getFactory().createGenerator(out);
+            write(generator, index);
+            generator.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString(0);
+    }
+
+    private static final class Builder {
+        private long[] tape = new long[64];
+        private int length;
+        private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Number> numbers = new ArrayList<Number>();
+        private int[] starts = new int[16];
+        private int[] sizes = new int[16];
+        private int depth;
+
+        void add(JsonToken token, JsonParser parser) throws IOException {
+            switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    countValue();
+                    if (depth == starts.length) {
+                        starts = Arrays.copyOf(starts, depth * 2);
+                        sizes = Arrays.copyOf(sizes, depth * 2);
+                    }
+                    starts[depth] = length;
+                    sizes[depth] = 0;
+                    depth++;
+                    append(token == JsonToken.START_OBJECT ? TYPE_OBJECT : TYPE_ARRAY, 0);
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    int start = starts[depth];
+                    long size = Math.min(sizes[depth], SIZE_OVERFLOW);
+                    //end marker keeps skip arithmetic uniform for empty and non-empty containers
+                    append(TYPE_NULL, 0);
+                    tape[start] |= (size << SIZE_SHIFT) | length;
+                    break;
+                case FIELD_NAME:
+                    sizes[depth - 1]++;
+                    append(TYPE_KEY, string(parser.getCurrentName()));
+                    break;
+                case VALUE_STRING:
+                    countValue();
+                    append(TYPE_STRING, string(parser.getText()));
+                    break;
+                case VALUE_NUMBER_INT:
+                    countValue();
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                        number(parser.getBigIntegerValue());
+                    } else {
+                        long v = parser.getLongValue();
+                        if (v >= MIN_INLINE && v <= MAX_INLINE) {
+                            append(TYPE_LONG, v & PAYLOAD_MASK);
+                        } else {
+                            append(TYPE_LONG_EXTENDED, 0);
+                            appendRaw(v);
+                        }
+                    }
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    countValue();
+                    if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                        number(parser.getDecimalValue());
+                    } else {
+                        append(TYPE_DOUBLE, 0);
+                        appendRaw(Double.doubleToRawLongBits(parser.getDoubleValue()));
+                    }
+                    break;
+                case VALUE_TRUE:
+                    countValue();
+                    append(TYPE_TRUE, 0);
+                    break;
+                case VALUE_FALSE:
+                    countValue();
+                    append(TYPE_FALSE, 0);
+                    break;
+                case VALUE_NULL:
+                    countValue();
+                    append(TYPE_NULL, 0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported JSON token: " + token);
+            }
+        }
+
+        private void countValue() {
+            if (depth > 0 && (tape[starts[depth - 1]] >>> TYPE_SHIFT) == TYPE_ARRAY) {
+                sizes[depth - 1]++;
+            }
+        }
+
+        private int string(String s) {
+            Integer index = stringIndexes.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndexes.put(s, index);
+            }
+            return index;
+        }
+
+        private void number(Number number) {
+            append(TYPE_BIG_NUMBER, numbers.size());
+            numbers.add(number);
+        }
+
+        private void append(int type, long payload) {
+            appendRaw(((long) type << TYPE_SHIFT) | payload);
+        }
+
+        private void appendRaw(long entry) {
+            if (length == tape.length) {
+                tape = Arrays.copyOf(tape, length * 2);
+            }
+            tape[length++] = entry;
+        }
+
+        JSONTape build() {
+            if (length == 0 || depth != 0) {
+                throw new IllegalArgumentException("Invalid JSON data");
+            }
+            return new JSONTape(Arrays.copyOf(tape, length), strings.toArray(new String[strings.size()]), numbers.toArray(new Number[numbers.size()]));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+public final class JSONTemplate {
+
+    public static final String PLACEHOLDER_PREFIX = "${";
+    public static final String PLACEHOLDER_SUFFIX = "}";
+    public static final char PLACEHOLDER_TYPE_SEPARATOR = ':';
+
+    private static final byte[] NULL_BYTES = "null".getBytes(JSON.DEFAULT_CHARSET);
+    private static final byte[] TRUE_BYTES = "true".getBytes(JSON.DEFAULT_CHARSET);
+    private static final byte[] FALSE_BYTES = "false".getBytes(JSON.DEFAULT_CHARSET);
+
+    public enum SlotType {
+        Any, String, Number, Boolean, JSON
+    }
+
+    private final ObjectMapper objectMapper;
+    private final byte[][] segments;
+    private final int[] slotRefs;
+    private final String[] slotNames;
+    private final SlotType[] slotTypes;
+    private final Map<String, Integer> slotIndexes;
+    private final int constantLength;
+
+    private JSONTemplate(ObjectMapper objectMapper, byte[][] segments, int[] slotRefs, List<String> slotNames, List<SlotType> slotTypes) {
+        this.objectMapper = objectMapper;
+        this.segments = segments;
+        this.slotRefs = slotRefs;
+        this.slotNames = slotNames.toArray(new String[slotNames.size()]);
+        this.slotTypes = slotTypes.toArray(new SlotType[slotTypes.size()]);
+        this.slotIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < this.slotNames.length; i++) {
+            slotIndexes.put(this.slotNames[i], i);
+        }
+
+        int length = 0;
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+        this.constantLength = length;
+    }
+
+    public static String placeholder(String name) {
+        return PLACEHOLDER_PREFIX + name + PLACEHOLDER_SUFFIX;
+    }
+
+    public static String placeholder(String name, SlotType type) {
+        if (type == null || type == SlotType.Any) {
+            return placeholder(name);
+        }
+        return PLACEHOLDER_PREFIX + name + PLACEHOLDER_TYPE_SEPARATOR + type.name().toLowerCase() + PLACEHOLDER_SUFFIX;
+    }
+
+    public static JSONTemplate compile(JSON json) {
+        return compile(json.getObjectMapper(), json.toStringCompact());
+    }
+
+    public static JSONTemplate compile(String jsonString) {
+        return compile(JSON.getDefaultObjectMapper(), jsonString);
+    }
+
+    public static JSONTemplate compile(ObjectMapper objectMapper, String jsonString) {
+        List<byte[]> segments = new ArrayList<byte[]>();
+        List<Integer> slotRefs = new ArrayList<Integer>();
+        List<String> slotNames = new ArrayList<String>();
+        List<SlotType> slotTypes = new ArrayList<SlotType>();
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonParser parser = objectMapper.getFactory().createParser(jsonString);
+            JsonGenerator generator = JSON.generator(objectMapper, out);
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.VALUE_STRING && isPlaceholder(parser.getText())) {
+                    String placeholder = parser.getText();
+                    String name = placeholder.substring(PLACEHOLDER_PREFIX.length(), placeholder.length() - PLACEHOLDER_SUFFIX.length());
+                    SlotType type = SlotType.Any;
+                    int separator = name.lastIndexOf(PLACEHOLDER_TYPE_SEPARATOR);
+                    if (separator != -1) {
+                        type = parseSlotType(name.substring(separator + 1));
+                        name = name.substring(0, separator);
+                    }
+
+                    int slot = slotNames.indexOf(name);
+                    if (slot == -1) {
+                        slot = slotNames.size();
+                        slotNames.add(name);
+                        slotTypes.add(type);
+                    } else if (slotTypes.get(slot) != type) {
+                        throw new IllegalArgumentException("Conflicting types of template slot: " + name);
+                    }
+
+                    //writes separator only, the value goes in place of the slot
+                    generator.writeRawValue("");
+                    generator.flush();
+                    segments.add(out.toByteArray());
+                    out.reset();
+                    slotRefs.add(slot);
+                } else {
+                    generator.copyCurrentEvent(parser);
+                }
+            }
+            parser.close();
+            generator.close();
+            segments.add(out.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON template", e);
+        }
+
+        int[] refs = new int[slotRefs.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = slotRefs.get(i);
+        }
+        return new JSONTemplate(objectMapper, segments.toArray(new byte[segments.size()][]), refs, slotNames, slotTypes);
+    }
+
+    private static boolean isPlaceholder(String s) {
+        return s.length() > PLACEHOLDER_PREFIX.length() + PLACEHOLDER_SUFFIX.length() && s.startsWith(PLACEHOLDER_PREFIX) && s.endsWith(PLACEHOLDER_SUFFIX);
+    }
+
+    private static SlotType parseSlotType(String s) {
+        for (SlotType type : SlotType.values()) {
+            if (type.name().equalsIgnoreCase(s)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown template slot type: " + s);
+    }
+
+    public List<String> getSlotNames() {
+        return Collections.unmodifiableList(Arrays.asList(slotNames));
+    }
+
+    public SlotType getSlotType(String name) {
+        Integer slot = slotIndexes.get(name);
+        if (slot == null) {
+            throw new IllegalArgumentException("Unknown template slot: " + name);
+        }
+        return slotTypes[slot];
+    }
+
+    public JSON render(Object... values) {
+        return toJSON(renderBuffer(encode(values)));
+    }
+
+    public JSON render(Map<String, ?> values) {
+        return toJSON(renderBuffer(encode(values)));
+    }
+
+    public byte[] renderBytes(Object... values) {
+        return renderBuffer(encode(values)).toByteArray();
+    }
+
+    public byte[] renderBytes(Map<String, ?> values) {
+        return renderBuffer(encode(values)).toByteArray();
+    }
+
+    public void renderTo(OutputStream out, Object... values) throws IOException {
+        write(out, encode(values));
+    }
+
+    public void renderTo(OutputStream out, Map<String, ?> values) throws IOException {
+        write(out, encode(values));
+    }
+
+    private JSON toJSON(JSON.BuilderOutputStream out) {
+        return new JSON(out.toString(JSON.DEFAULT_CHARSET), JSON.Formatting.Compact);
+    }
+
+    private JSON.BuilderOutputStream renderBuffer(byte[][] encodedValues) {
+        int length = constantLength;
+        for (int slotRef : slotRefs) {
+            length += encodedValues[slotRef].length;
+        }
+
+        JSON.BuilderOutputStream out = new JSON.BuilderOutputStream(length);
+        try {
+            write(out, encodedValues);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out;
+    }
+
+    private void write(OutputStream out, byte[][] encodedValues) throws IOException {
+        for (int i = 0; i < slotRefs.length; i++) {
+            out.write(segments[i]);
+            out.write(encodedValues[slotRefs[i]]);
+        }
+        out.write(segments[segments.length - 1]);
+    }
+
+    private byte[][] encode(Object[] values) {
+        if (values.length != slotNames.length) {
+            throw new IllegalArgumentException("Template expects " + slotNames.length + " values, got " + values.length);
+        }
+        byte[][] encoded = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = encode(i, values[i]);
+        }
+        return encoded;
+    }
+
+    private byte[][] encode(Map<String, ?> values) {
+        byte[][] encoded = new byte[slotNames.length][];
+        for (int i = 0; i < slotNames.length; i++) {
+            if (!values.containsKey(slotNames[i])) {
+                throw new IllegalArgumentException("Missing value of template slot: " + slotNames[i]);
+            }
+            encoded[i] = encode(i, values.get(slotNames[i]));
+        }
+        return encoded;
+    }
+
+    private byte[] encode(int slot, Object value) {
+        if (value == null) {
+            return NULL_BYTES;
+        }
+
+        SlotType type = slotTypes[slot];
+        if (value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+            checkType(slot, type == SlotType.String);
+            String s = (value instanceof Enum) ? ((Enum) value).name() : value.toString();
+            byte[] quoted = JsonStringEncoder.getInstance().quoteAsUTF8(s);
+            byte[] encoded = new byte[quoted.length + 2];
+            encoded[0] = '"';
+            System.arraycopy(quoted, 0, encoded, 1, quoted.length);
+            encoded[encoded.length - 1] = '"';
+            return encoded;
+        }
+        if (value instanceof Boolean) {
+            checkType(slot, type == SlotType.Boolean);
+            return ((Boolean) value) ? TRUE_BYTES : FALSE_BYTES;
+        }
+        if (value instanceof Number) {
+            checkType(slot, type == SlotType.Number);
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return value.toString().getBytes(JSON.DEFAULT_CHARSET);
+            }
+            return toBytes(value);
+        }
+        if (value instanceof JSON) {
+            checkType(slot, type == SlotType.JSON);
+            return ((JSON) value).toStringCompact().getBytes(JSON.DEFAULT_CHARSET);
+        }
+        if (value instanceof TreeNode) {
+            checkType(slot, type == SlotType.JSON);
+            return toBytes(value);
+        }
+
+        checkType(slot, false);
+        return toBytes(value);
+    }
+
+    private void checkType(int slot, boolean matches) {
+        if (!matches && slotTypes[slot] != SlotType.Any) {
+            throw new IllegalArgumentException("Template slot " + slotNames[slot] + " expects " + slotTypes[slot] + " value");
+        }
+    }
+
+    private byte[] toBytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < slotRefs.length; i++) {
+            sb.append(new String(segments[i], JSON.DEFAULT_CHARSET));
+            sb.append('"').append(placeholder(slotNames[slotRefs[i]], slotTypes[slotRefs[i]])).append('"');
+        }
+        sb.append(new String(segments[segments.length - 1], JSON.DEFAULT_CHARSET));
+        return sb.toString();
+    }
+}
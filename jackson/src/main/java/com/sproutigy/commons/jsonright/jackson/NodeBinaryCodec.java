@@ -0,0 +1,295 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+final class NodeBinaryCodec {
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_TRUE = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_BIG_INTEGER = 5;
+    private static final int TAG_FLOAT = 6;
+    private static final int TAG_DOUBLE = 7;
+    private static final int TAG_BIG_DECIMAL = 8;
+    private static final int TAG_STRING = 9;
+    private static final int TAG_BINARY = 10;
+    private static final int TAG_OBJECT = 11;
+    private static final int TAG_ARRAY = 12;
+    private static final int TAG_RAW = 13;
+
+    private NodeBinaryCodec() {
+    }
+
+    static byte[] encode(JsonNode node) {
+        Encoder encoder = new Encoder();
+        encoder.writeNode(node);
+        return encoder.out.toByteArray();
+    }
+
+    static JsonNode decode(byte[] data, ObjectMapper objectMapper) throws IOException {
+        Decoder decoder = new Decoder(data, objectMapper);
+        try {
+            JsonNode node = decoder.readNode();
+            if (decoder.pos != data.length) {
+                throw new StreamCorruptedException("Unexpected trailing data in JSON binary encoding");
+            }
+            return node;
+        } catch (IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException("Truncated JSON binary encoding");
+        }
+    }
+
+    private static final class Encoder {
+        private final JSON.BuilderOutputStream out = new JSON.BuilderOutputStream(256);
+        private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+        void writeNode(JsonNode node) {
+            if (node == null || node.isNull() || node.isMissingNode()) {
+                out.write(TAG_NULL);
+            } else if (node.isBoolean()) {
+                out.write(node.booleanValue() ? TAG_TRUE : TAG_FALSE);
+            } else if (node.isNumber()) {
+                writeNumber(node);
+            } else if (node.isTextual()) {
+                out.write(TAG_STRING);
+                writeString(node.textValue());
+            } else if (node.isBinary()) {
+                byte[] data;
+                try {
+                    data = node.binaryValue();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                out.write(TAG_BINARY);
+                writeVarInt(data.length);
+                out.write(data, 0, data.length);
+            } else if (node.isObject()) {
+                out.write(TAG_OBJECT);
+                writeVarInt(node.size());
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    writeName(field.getKey());
+                    writeNode(field.getValue());
+                }
+            } else if (node.isArray()) {
+                out.write(TAG_ARRAY);
+                writeVarInt(node.size());
+                for (int i = 0; i < node.size(); i++) {
+                    writeNode(node.get(i));
+                }
+            } else {
+                //POJO and raw value nodes are kept as their JSON text
+                out.write(TAG_RAW);
+                writeString(node.toString());
+            }
+        }
+
+        private void writeNumber(JsonNode node) {
+            switch (node.numberType()) {
+                case INT:
+                    out.write(TAG_INT);
+                    writeVarInt(zigZag(node.intValue()));
+                    break;
+                case LONG:
+                    out.write(TAG_LONG);
+                    writeVarInt(zigZag(node.longValue()));
+                    break;
+                case BIG_INTEGER:
+                    out.write(TAG_BIG_INTEGER);
+                    writeBytes(node.bigIntegerValue().toByteArray());
+                    break;
+                case FLOAT:
+                    out.write(TAG_FLOAT);
+                    writeFixed(Float.floatToIntBits(node.floatValue()), 4);
+                    break;
+                case DOUBLE:
+                    out.write(TAG_DOUBLE);
+                    writeFixed(Double.doubleToLongBits(node.doubleValue()), 8);
+                    break;
+                default:
+                    BigDecimal decimal = node.decimalValue();
+                    out.write(TAG_BIG_DECIMAL);
+                    writeVarInt(zigZag(decimal.scale()));
+                    writeBytes(decimal.unscaledValue().toByteArray());
+            }
+        }
+
+        private void writeName(String name) {
+            //repeated names (i.e. in arrays of similar objects) are written as back-references
+            Integer index = names.get(name);
+            if (index != null) {
+                writeVarInt(index + 1);
+            } else {
+                names.put(name, names.size());
+                writeVarInt(0);
+                writeString(name);
+            }
+        }
+
+        private void writeString(String s) {
+            writeBytes(s.getBytes(JSON.DEFAULT_CHARSET));
+        }
+
+        private void writeBytes(byte[] data) {
+            writeVarInt(data.length);
+            out.write(data, 0, data.length);
+        }
+
+        private void writeFixed(long v, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                out.write((int) (v >>> (i * 8)));
+            }
+        }
+
+        private void writeVarInt(long v) {
+            while ((v & ~0x7FL) != 0) {
+                out.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.write((int) v);
+        }
+
+        private static long zigZag(long v) {
+            return (v << 1) ^ (v >> 63);
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] data;
+        private final ObjectMapper objectMapper;
+        private final JsonNodeFactory nodeFactory;
+        private final List<String> names = new ArrayList<String>();
+        private int pos;
+
+        Decoder(byte[] data, ObjectMapper objectMapper) {
+            this.data = data;
+            this.objectMapper = objectMapper;
+            this.nodeFactory = objectMapper.getNodeFactory();
+        }
+
+        JsonNode readNode() throws IOException {
+            int tag = data[pos++];
+            switch (tag) {
+                case TAG_NULL:
+                    return nodeFactory.nullNode();
+                case TAG_TRUE:
+                    return nodeFactory.booleanNode(true);
+                case TAG_FALSE:
+                    return nodeFactory.booleanNode(false);
+                case TAG_INT:
+                    return nodeFactory.numberNode((int) unZigZag(readVarInt()));
+                case TAG_LONG:
+                    return nodeFactory.numberNode(unZigZag(readVarInt()));
+                case TAG_BIG_INTEGER:
+                    return nodeFactory.numberNode(new BigInteger(readBytes()));
+                case TAG_FLOAT:
+                    return nodeFactory.numberNode(Float.intBitsToFloat((int) readFixed(4)));
+                case TAG_DOUBLE:
+                    return nodeFactory.numberNode(Double.longBitsToDouble(readFixed(8)));
+                case TAG_BIG_DECIMAL:
+                    int scale = (int) unZigZag(readVarInt());
+                    return nodeFactory.numberNode(new BigDecimal(new BigInteger(readBytes()), scale));
+                case TAG_STRING:
+                    return nodeFactory.textNode(readString());
+                case TAG_BINARY:
+                    return nodeFactory.binaryNode(readBytes());
+                case TAG_OBJECT:
+                    int fieldCount = readCount();
+                    ObjectNode objectNode = nodeFactory.objectNode();
+                    for (int i = 0; i < fieldCount; i++) {
+                        String name = readName();
+                        objectNode.set(name, readNode());
+                    }
+                    return objectNode;
+                case TAG_ARRAY:
+                    int itemCount = readCount();
+                    ArrayNode arrayNode = nodeFactory.arrayNode();
+                    for (int i = 0; i < itemCount; i++) {
+                        arrayNode.add(readNode());
+                    }
+                    return arrayNode;
+                case TAG_RAW:
+                    return objectMapper.readTree(readString());
+                default:
+                    throw new StreamCorruptedException("Unknown tag in JSON binary encoding: " + tag);
+            }
+        }
+
+        private String readName() throws IOException {
+            int ref = readCount();
+            if (ref == 0) {
+                String name = readString();
+                names.add(name);
+                return name;
+            }
+            if (ref > names.size()) {
+                throw new StreamCorruptedException("Invalid field name reference in JSON binary encoding");
+            }
+            return names.get(ref - 1);
+        }
+
+        private String readString() throws IOException {
+            int length = readCount();
+            String s = new String(data, pos, length, JSON.DEFAULT_CHARSET);
+            pos += length;
+            return s;
+        }
+
+        private byte[] readBytes() throws IOException {
+            int length = readCount();
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, pos, bytes, 0, length);
+            pos += length;
+            return bytes;
+        }
+
+        private int readCount() throws IOException {
+            long v = readVarInt();
+            if (v < 0 || v > data.length) {
+                throw new StreamCorruptedException("Invalid length in JSON binary encoding");
+            }
+            return (int) v;
+        }
+
+        private long readFixed(int length) {
+            long v = 0;
+            for (int i = 0; i < length; i++) {
+                v = (v << 8) | (data[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        private long readVarInt() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = data[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint in JSON binary encoding");
+        }
+
+        private static long unZigZag(long v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
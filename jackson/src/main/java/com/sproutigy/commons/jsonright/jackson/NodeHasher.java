@@ -0,0 +1,152 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+//content hashes of nodes trees, independent of fields order and number representation (1, 1.0 and 1e0 are equal);
+//containers' hashes are cached by identity, so after a write only the containers modified in place are rehashed
+final class NodeHasher {
+
+    private static final int MAX_ENTRIES = 1 << 20;
+
+    private static final long TAG_NULL = 0x6e756c6cL;
+    private static final long TAG_TRUE = 0x74727565L;
+    private static final long TAG_FALSE = 0x66616c73L;
+    private static final long TAG_NUMBER = 0x6e756d62L;
+    private static final long TAG_STRING = 0x73747269L;
+    private static final long TAG_BINARY = 0x62696e61L;
+    private static final long TAG_OBJECT = 0x6f626a65L;
+    private static final long TAG_ARRAY = 0x61727261L;
+
+    private final Map<JsonNode, Long> hashes = new IdentityHashMap<JsonNode, Long>();
+
+    synchronized long hash(JsonNode node) {
+        return hashValue(node);
+    }
+
+    //to be called before a container is modified in place
+    synchronized void forget(JsonNode container) {
+        hashes.remove(container);
+    }
+
+    synchronized int size() {
+        return hashes.size();
+    }
+
+    private long hashValue(JsonNode node) {
+        if (node.isObject() || node.isArray()) {
+            if (node.size() == 0) {
+                return mix(node.isObject() ? TAG_OBJECT : TAG_ARRAY);
+            }
+            Long cached = hashes.get(node);
+            if (cached != null) {
+                return cached;
+            }
+            long hash = node.isObject() ? hashObject(node) : hashArray(node);
+            if (hashes.size() >= MAX_ENTRIES) {
+                hashes.clear();
+            }
+            hashes.put(node, hash);
+            return hash;
+        }
+
+        if (node.isTextual()) {
+            return mix(TAG_STRING ^ hashString(node.textValue()));
+        }
+        if (node.isNumber()) {
+            return hashNumber(node);
+        }
+        if (node.isBoolean()) {
+            return mix(node.booleanValue() ? TAG_TRUE : TAG_FALSE);
+        }
+        if (node.isNull() || node.isMissingNode()) {
+            return mix(TAG_NULL);
+        }
+        if (node.isBinary()) {
+            long hash = TAG_BINARY;
+            try {
+                for (byte b : node.binaryValue()) {
+                    hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return mix(hash);
+        }
+        return mix(TAG_STRING ^ hashString(node.toString()));
+    }
+
+    private long hashObject(JsonNode node) {
+        //sum of fields' hashes does not depend on their order
+        long hash = 0;
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            hash += mix(hashString(field.getKey()) * 0x9e3779b97f4a7c15L + hashValue(field.getValue()));
+        }
+        return mix(hash ^ TAG_OBJECT + node.size());
+    }
+
+    private long hashArray(JsonNode node) {
+        long hash = TAG_ARRAY;
+        for (int i = 0; i < node.size(); i++) {
+            hash = (hash ^ hashValue(node.get(i))) * 0x100000001b3L;
+        }
+        return mix(hash + node.size());
+    }
+
+    private static long hashNumber(JsonNode node) {
+        if (node.isIntegralNumber() && node.canConvertToLong()) {
+            return hashLong(node.longValue());
+        }
+        BigDecimal decimal;
+        if (node.isFloatingPointNumber() && !node.isBigDecimal()) {
+            double value = node.doubleValue();
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return mix(TAG_NUMBER ^ Double.doubleToLongBits(value));
+            }
+            if (value == Math.rint(value) && Math.abs(value) < 0x1p63) {
+                return hashLong((long) value);
+            }
+            decimal = BigDecimal.valueOf(value);
+        } else {
+            decimal = node.decimalValue();
+        }
+
+        decimal = decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+        if (decimal.scale() <= 0) {
+            try {
+                return hashLong(decimal.longValueExact());
+            } catch (ArithmeticException outOfRange) {
+                //hashed as decimal below
+            }
+        }
+        return mix(TAG_NUMBER ^ (decimal.unscaledValue().hashCode() * 31L + decimal.scale()));
+    }
+
+    private static long hashLong(long value) {
+        return mix(TAG_NUMBER + value * 0x9e3779b97f4a7c15L);
+    }
+
+    private static long hashString(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,168 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+//builds nodes tree like ObjectMapper.readTree(), optionally interning strings and compacting numeric arrays
+final class NodeTreeReader {
+
+    private final JSONInterner interner;
+    private final int numericArrayThreshold;
+    private final JsonNodeFactory nodeFactory;
+    private final boolean bigDecimals;
+    private final boolean failOnDuplicateKeys;
+
+    NodeTreeReader(ObjectMapper objectMapper, JSONInterner interner, int numericArrayThreshold) {
+        this.interner = interner;
+        this.numericArrayThreshold = numericArrayThreshold;
+        this.nodeFactory = objectMapper.getNodeFactory();
+        this.bigDecimals = objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        this.failOnDuplicateKeys = objectMapper.isEnabled(DeserializationFeature.FAIL_ON_READING_DUP_TREE_KEY);
+    }
+
+    JsonNode read(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        return readValue(parser, token);
+    }
+
+    JsonNode readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                ObjectNode objectNode = nodeFactory.objectNode();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    if (interner != null) {
+                        fieldName = interner.name(fieldName);
+                    }
+                    setField(parser, objectNode, fieldName, readValue(parser, parser.nextToken()));
+                }
+                return objectNode;
+            case START_ARRAY:
+                return readArray(parser);
+            case VALUE_STRING:
+                if (interner != null) {
+                    return interner.text(parser.getText());
+                }
+                return nodeFactory.textNode(parser.getText());
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return nodeFactory.numberNode(parser.getIntValue());
+                    case LONG:
+                        return nodeFactory.numberNode(parser.getLongValue());
+                    default:
+                        return nodeFactory.numberNode(parser.getBigIntegerValue());
+                }
+            case VALUE_NUMBER_FLOAT:
+                if (bigDecimals || parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                    return nodeFactory.numberNode(parser.getDecimalValue());
+                }
+                return nodeFactory.numberNode(parser.getDoubleValue());
+            case VALUE_TRUE:
+                return nodeFactory.booleanNode(true);
+            case VALUE_FALSE:
+                return nodeFactory.booleanNode(false);
+            case VALUE_NULL:
+                return nodeFactory.nullNode();
+            case VALUE_EMBEDDED_OBJECT:
+                Object embedded = parser.getEmbeddedObject();
+                if (embedded instanceof byte[]) {
+                    return nodeFactory.binaryNode((byte[]) embedded);
+                }
+                return nodeFactory.pojoNode(embedded);
+            default:
+                throw new IllegalStateException("Unexpected token: " + token);
+        }
+    }
+
+    //same input is accepted as by ObjectMapper.readTree()
+    void setField(JsonParser parser, ObjectNode objectNode, String fieldName, JsonNode value) throws JsonMappingException {
+        if (objectNode.replace(fieldName, value) != null && failOnDuplicateKeys) {
+            throw JsonMappingException.from(parser, "Duplicate field '" + fieldName + "' for ObjectNode: not allowed when FAIL_ON_READING_DUP_TREE_KEY enabled");
+        }
+    }
+
+    private JsonNode readArray(JsonParser parser) throws IOException {
+        if (numericArrayThreshold <= 0) {
+            ArrayNode arrayNode = nodeFactory.arrayNode();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                arrayNode.add(readValue(parser, token));
+            }
+            return arrayNode;
+        }
+
+        //numbers are collected into a primitive array for as long as all of them are of the same kind
+        long[] longs = null;
+        double[] doubles = null;
+        int count = 0;
+        ArrayNode arrayNode = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (arrayNode == null) {
+                if (token == JsonToken.VALUE_NUMBER_INT && doubles == null && isIntegral(parser.getNumberType())) {
+                    if (longs == null) {
+                        longs = new long[16];
+                    } else if (count == longs.length) {
+                        longs = Arrays.copyOf(longs, count << 1);
+                    }
+                    longs[count++] = parser.getLongValue();
+                    continue;
+                }
+                if (token == JsonToken.VALUE_NUMBER_FLOAT && longs == null && !bigDecimals && parser.getNumberType() != JsonParser.NumberType.BIG_DECIMAL) {
+                    if (doubles == null) {
+                        doubles = new double[16];
+                    } else if (count == doubles.length) {
+                        doubles = Arrays.copyOf(doubles, count << 1);
+                    }
+                    doubles[count++] = parser.getDoubleValue();
+                    continue;
+                }
+                arrayNode = expand(longs, doubles, count);
+            }
+            arrayNode.add(readValue(parser, token));
+        }
+
+        if (arrayNode != null) {
+            return arrayNode;
+        }
+        if (count < numericArrayThreshold) {
+            return expand(longs, doubles, count);
+        }
+        if (longs != null) {
+            return NumericArrayNode.wrap(count == longs.length ? longs : Arrays.copyOf(longs, count));
+        }
+        return NumericArrayNode.wrap(count == doubles.length ? doubles : Arrays.copyOf(doubles, count));
+    }
+
+    private ArrayNode expand(long[] longs, double[] doubles, int count) {
+        ArrayNode arrayNode = nodeFactory.arrayNode();
+        for (int i = 0; i < count; i++) {
+            if (doubles != null) {
+                arrayNode.add(nodeFactory.numberNode(doubles[i]));
+            } else if (longs[i] >= Integer.MIN_VALUE && longs[i] <= Integer.MAX_VALUE) {
+                arrayNode.add(nodeFactory.numberNode((int) longs[i]));
+            } else {
+                arrayNode.add(nodeFactory.numberNode(longs[i]));
+            }
+        }
+        return arrayNode;
+    }
+
+    private static boolean isIntegral(JsonParser.NumberType numberType) {
+        return numberType == JsonParser.NumberType.INT || numberType == JsonParser.NumberType.LONG;
+    }
+}
@@ -0,0 +1,334 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+//read-only array of numbers backed by a primitive array, elements are boxed into nodes only on access;
+//it is not an ArrayNode, so it appears only where opted in by JSON.setNumericArrayThreshold() or valueOf()
+public final class NumericArrayNode extends BaseJsonNode {
+
+    private static final long serialVersionUID = -7226889117758204430L;
+
+    private final long[] longs;
+    private final double[] doubles;
+
+    private NumericArrayNode(long[] longs, double[] doubles) {
+        this.longs = longs;
+        this.doubles = doubles;
+    }
+
+    public static NumericArrayNode valueOf(long[] values) {
+        return new NumericArrayNode(values.clone(), null);
+    }
+
+    public static NumericArrayNode valueOf(double[] values) {
+        return new NumericArrayNode(null, values.clone());
+    }
+
+    static NumericArrayNode wrap(long[] values) {
+        return new NumericArrayNode(values, null);
+    }
+
+    static NumericArrayNode wrap(double[] values) {
+        return new NumericArrayNode(null, values);
+    }
+
+    public boolean isFloatingPoint() {
+        return doubles != null;
+    }
+
+    public long[] longValues() {
+        if (longs != null) {
+            return longs.clone();
+        }
+        long[] values = new long[doubles.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) doubles[i];
+        }
+        return values;
+    }
+
+    public double[] doubleValues() {
+        if (doubles != null) {
+            return doubles.clone();
+        }
+        double[] values = new double[longs.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = longs[i];
+        }
+        return values;
+    }
+
+    ArrayNode toArrayNode(JsonNodeFactory nodeFactory) {
+        ArrayNode arrayNode = nodeFactory.arrayNode();
+        for (int i = 0; i < size(); i++) {
+            arrayNode.add(element(i));
+        }
+        return arrayNode;
+    }
+
+    private JsonNode element(int index) {
+        if (doubles != null) {
+            return DoubleNode.valueOf(doubles[index]);
+        }
+        long v = longs[index];
+        //same node types as the tree parsed by Jackson would contain
+        if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+            return IntNode.valueOf((int) v);
+        }
+        return LongNode.valueOf(v);
+    }
+
+    @Override
+    public JsonNodeType getNodeType() {
+        return JsonNodeType.ARRAY;
+    }
+
+    @Override
+    public boolean isArray() {
+        return true;
+    }
+
+    @Override
+    public JsonToken asToken() {
+        return JsonToken.START_ARRAY;
+    }
+
+    @Override
+    public String asText() {
+        return "";
+    }
+
+    @Override
+    public int size() {
+        return doubles != null ? doubles.length : longs.length;
+    }
+
+    @Override
+    public JsonNode get(int index) {
+        if (index < 0 || index >= size()) {
+            return null;
+        }
+        return element(index);
+    }
+
+    @Override
+    public JsonNode get(String fieldName) {
+        return null;
+    }
+
+    @Override
+    public JsonNode path(int index) {
+        JsonNode node = get(index);
+        return node != null ? node : MissingNode.getInstance();
+    }
+
+    @Override
+    public JsonNode path(String fieldName) {
+        return MissingNode.getInstance();
+    }
+
+    @Override
+    protected JsonNode _at(JsonPointer ptr) {
+        return get(ptr.getMatchingIndex());
+    }
+
+    @Override
+    public Iterator<JsonNode> elements() {
+        return new Iterator<JsonNode>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public JsonNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return element(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends JsonNode> T deepCopy() {
+        return (T) this;
+    }
+
+    @Override
+    public JsonNode findValue(String fieldName) {
+        return null;
+    }
+
+    @Override
+    public ObjectNode findParent(String fieldName) {
+        return null;
+    }
+
+    @Override
+    public List<JsonNode> findValues(String fieldName, List<JsonNode> foundSoFar) {
+        return foundSoFar;
+    }
+
+    @Override
+    public List<String> findValuesAsText(String fieldName, List<String> foundSoFar) {
+        return foundSoFar;
+    }
+
+    @Override
+    public List<JsonNode> findParents(String fieldName, List<JsonNode> foundSoFar) {
+        return foundSoFar;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartArray();
+        writeElements(generator);
+        generator.writeEndArray();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        typeSerializer.writeTypePrefixForArray(this, generator);
+        writeElements(generator);
+        typeSerializer.writeTypeSuffixForArray(this, generator);
+    }
+
+    private void writeElements(JsonGenerator generator) throws IOException {
+        if (doubles != null) {
+            for (double v : doubles) {
+                generator.writeNumber(v);
+            }
+        } else {
+            for (long v : longs) {
+                generator.writeNumber(v);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (other instanceof NumericArrayNode) {
+            NumericArrayNode that = (NumericArrayNode) other;
+            return Arrays.equals(longs, that.longs) && Arrays.equals(doubles, that.doubles);
+        }
+        if (other instanceof ArrayNode) {
+            ArrayNode that = (ArrayNode) other;
+            if (that.size() != size()) {
+                return false;
+            }
+            for (int i = 0; i < size(); i++) {
+                if (!element(i).equals(that.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    //symmetric deep equality that also matches primitive-backed arrays with regular arrays of the same numbers
+    //(Jackson's ArrayNode.equals() rejects any other node class), leaves are compared by comparator when given
+    static boolean equal(JsonNode a, JsonNode b) {
+        return equal(a, b, null);
+    }
+
+    static boolean equal(JsonNode a, JsonNode b, Comparator<JsonNode> leaves) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a.isArray() && b.isArray()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            if (leaves == null && a instanceof NumericArrayNode && b instanceof NumericArrayNode) {
+                return a.equals(b);
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!equal(a.get(i), b.get(i), leaves)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a.isObject() && b.isObject()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = a.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!equal(field.getValue(), b.get(field.getKey()), leaves)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return leaves != null ? leaves.compare(a, b) == 0 : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        //consistent with ArrayNode holding the same elements
+        int hash = 1;
+        for (int i = 0; i < size(); i++) {
+            hash = 31 * hash + element(i).hashCode();
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(16 + (size() << 3));
+        sb.append('[');
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (doubles != null) {
+                sb.append(doubles[i]);
+            } else {
+                sb.append(longs[i]);
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,286 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class OffHeapJSON implements Closeable {
+
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+
+    private final ByteBuffer buffer;
+    private final ObjectMapper objectMapper;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private OffHeapJSON(ByteBuffer buffer, ObjectMapper objectMapper) {
+        this.buffer = buffer;
+        this.objectMapper = objectMapper;
+    }
+
+    public static OffHeapJSON fromBytes(byte[] data) {
+        return fromBytes(data, 0, data.length);
+    }
+
+    public static OffHeapJSON fromBytes(byte[] data, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(data, offset, length);
+        buffer.flip();
+        return new OffHeapJSON(buffer, JSON.getDefaultObjectMapper());
+    }
+
+    public static OffHeapJSON fromString(String jsonString) {
+        return fromBytes(jsonString.getBytes(JSON.DEFAULT_CHARSET));
+    }
+
+    public static OffHeapJSON of(JSON json) {
+        return fromBytes(json.toBytes());
+    }
+
+    public int size() {
+        return buffer.limit();
+    }
+
+    public JsonNode get() {
+        return get(null);
+    }
+
+    public JsonNode get(String path) {
+        try {
+            JsonParser parser = createParser();
+            try {
+                if (!StreamingPath.seek(parser, path)) {
+                    return null;
+                }
+                return parser.readValueAsTree();
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public <T> T get(String path, Class<? extends T> clazz) {
+        JsonNode node = get(path);
+        try {
+            if (node == null) {
+                return null;
+            } else {
+                return objectMapper.treeToValue(node, clazz);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public <T> T get(String path, Class<? extends T> clazz, T defaultValue) {
+        T value = get(path, clazz);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    public boolean has(String path) {
+        try {
+            JsonParser parser = createParser();
+            try {
+                return StreamingPath.seek(parser, path) && parser.getCurrentToken() != JsonToken.VALUE_NULL;
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public <T> T deserialize(Class<? extends T> clazz) {
+        try {
+            JsonParser parser = createParser();
+            try {
+                return objectMapper.readValue(parser, clazz);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        acquire();
+        try {
+            ByteBuffer source = buffer.duplicate();
+            byte[] chunk = new byte[Math.min(COPY_BUFFER_SIZE, source.remaining())];
+            while (source.hasRemaining()) {
+                int length = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    public JsonParser parser() throws IOException {
+        return createParser();
+    }
+
+    public JsonParser parser(String path) throws IOException {
+        JsonParser parser = parser();
+        if (!StreamingPath.seek(parser, path)) {
+            parser.close();
+            return null;
+        }
+        return parser;
+    }
+
+    public JSON toJSON() {
+        byte[] data = new byte[size()];
+        acquire();
+        try {
+            buffer.duplicate().get(data);
+        } finally {
+            release();
+        }
+        return new JSON(data);
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toJSON().toString();
+    }
+
+    //parser holds a reference until closed, so memory is never released under an active reader
+    private JsonParser createParser() throws IOException {
+        acquire();
+        BufferInputStream in = new BufferInputStream(buffer.duplicate());
+        try {
+            JsonParser parser = objectMapper.getFactory().createParser(in);
+            parser.setCodec(objectMapper);
+            return parser;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private void acquire() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Off-heap JSON is closed");
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void release() {
+        if (references.decrementAndGet() == 0) {
+            Cleaner.free(buffer);
+        }
+    }
+
+    private final class BufferInputStream extends InputStream {
+        private final ByteBuffer source;
+        private boolean released;
+
+        BufferInputStream(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            return source.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, source.remaining());
+            source.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return source.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!released) {
+                released = true;
+                release();
+            }
+        }
+    }
+
+    private static final class Cleaner {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+            } catch (Exception notAvailable) {
+                invokeCleaner = null;
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        static void free(ByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                } else {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (Exception ignore) {
+                //memory will be released when the buffer is garbage collected
+            }
+        }
+    }
+}
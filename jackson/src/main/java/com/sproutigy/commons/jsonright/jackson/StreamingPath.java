@@ -0,0 +1,95 @@
+package com.sproutigy.commons.jsonright.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+final class StreamingPath {
+
+    private StreamingPath() {
+    }
+
+    //moves fresh parser to the first token of a value resolved by the path, skipping everything else
+    static boolean seek(JsonParser parser, String path) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return false;
+        }
+        if (path == null) {
+            return true;
+        }
+
+        int pos = 0;
+        while (pos < path.length()) {
+            int end;
+            if (path.charAt(pos) == '[') {
+                end = path.indexOf(']', pos);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+                String indexer = path.substring(pos + 1, end);
+                end++;
+                if (token != JsonToken.START_ARRAY || indexer.isEmpty()) {
+                    return false;
+                }
+                int arrayIndex;
+                try {
+                    arrayIndex = Integer.parseInt(indexer);
+                } catch (NumberFormatException notInteger) {
+                    throw new IllegalArgumentException("Malformed JSON path");
+                }
+
+                int i = 0;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (i == arrayIndex) {
+                        break;
+                    }
+                    parser.skipChildren();
+                    i++;
+                }
+                if (token == JsonToken.END_ARRAY) {
+                    return false;
+                }
+            } else {
+                int nextDot = path.indexOf('.', pos + 1);
+                int nextIndexer = path.indexOf('[', pos + 1);
+                end = path.length();
+                if (nextDot != -1) {
+                    end = nextDot;
+                }
+                if (nextIndexer != -1 && nextIndexer < end) {
+                    end = nextIndexer;
+                }
+
+                if (token != JsonToken.START_OBJECT) {
+                    if (token == JsonToken.VALUE_NULL) {
+                        return false;
+                    }
+                    throw new IllegalStateException("Cannot change type of a root node");
+                }
+
+                String fieldName = path.substring(pos, end);
+                boolean found = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String currentName = parser.getCurrentName();
+                    token = parser.nextToken();
+                    if (fieldName.equals(currentName)) {
+                        found = true;
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+
+            pos = end;
+            if (pos < path.length() && path.charAt(pos) == '.') {
+                pos++;
+            }
+        }
+        return true;
+    }
+}
@@ -1,16 +1,40 @@
 package com.sproutiyg.commons.jsonright;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.sproutigy.commons.jsonright.jackson.ClassedJSON;
 import com.sproutigy.commons.jsonright.jackson.JSON;
+import com.sproutigy.commons.jsonright.jackson.JSONColumns;
+import com.sproutigy.commons.jsonright.jackson.JSONCursor;
+import com.sproutigy.commons.jsonright.jackson.JSONEdit;
+import com.sproutigy.commons.jsonright.jackson.JSONEvent;
+import com.sproutigy.commons.jsonright.jackson.JSONEventListener;
+import com.sproutigy.commons.jsonright.jackson.JSONInterner;
+import com.sproutigy.commons.jsonright.jackson.JSONMetrics;
+import com.sproutigy.commons.jsonright.jackson.JSONName;
+import com.sproutigy.commons.jsonright.jackson.JSONParseCache;
+import com.sproutigy.commons.jsonright.jackson.JSONPath;
+import com.sproutigy.commons.jsonright.jackson.JSONProjection;
+import com.sproutigy.commons.jsonright.jackson.JSONTemplate;
+import com.sproutigy.commons.jsonright.jackson.NumericArrayNode;
+import com.sproutigy.commons.jsonright.jackson.OffHeapJSON;
 import org.junit.Test;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -398,6 +422,1146 @@ public class JSONTest {
         assertEquals("{\"name\":null}", json.toStringCompact());
     }
 
+    @Test
+    public void testPooledBuilder() {
+        JSON.BuilderRoot first = JSON.pooledBuilder();
+        JSON json1 = first.startObject().field("hello", "world").endObject().build();
+        assertEquals("{\"hello\":\"world\"}", json1.toString());
+
+        JSON.BuilderRoot second = JSON.pooledBuilder();
+        assertSame(first, second);
+        JSON json2 = second.startArray().value(1).value(2).endArray().build();
+        assertEquals("[1,2]", json2.toString());
+        assertEquals("{\"hello\":\"world\"}", json1.toString());
+
+        JSON.BuilderRoot outer = JSON.pooledBuilder();
+        JSON.BuilderRoot nested = JSON.pooledBuilder();
+        assertNotSame(outer, nested);
+        assertEquals("true", nested.value(true).build().toString());
+        assertEquals("false", outer.value(false).build().toString());
+
+        JSON.Builder builder = new JSON.Builder();
+        builder.startObject().field("a", 1);
+        builder.reset().startObject().field("b", 2).endObject();
+        assertEquals("{\"b\":2}", builder.build().toString());
+    }
+
+    @Test
+    public void testBuilderPreEncodedNames() {
+        JSONName id = JSON.name("id");
+        JSONName tags = JSON.name("tags");
+        JSONName meta = JSON.name("meta");
+        JSONName weird = JSON.name("quo\"te");
+
+        String json = JSON.builder()
+                .startObject()
+                    .field(id, 7)
+                    .field(weird, "x")
+                    .startArray(tags)
+                        .value("a")
+                    .endArray()
+                    .startObject(meta)
+                        .fieldNull(id)
+                    .endObject()
+                .endObject()
+                .build().toString();
+
+        assertEquals("{\"id\":7,\"quo\\\"te\":\"x\",\"tags\":[\"a\"],\"meta\":{\"id\":null}}", json);
+        assertEquals(JSON.name("id"), id);
+    }
+
+    @Test
+    public void testTemplate() {
+        JSONTemplate template = JSONTemplate.compile("{\"type\":\"order\",\"id\":\"${id:number}\",\"customer\":{\"name\":\"${name}\"},\"items\":[\"${items:json}\",1],\"echo\":\"${name}\",\"paid\":\"${paid:boolean}\"}");
+        assertEquals(Arrays.asList("id", "name", "items", "paid"), template.getSlotNames());
+
+        JSON json = template.render(42, "Jo\"hn", JSON.fromString("[\"a\"]"), true);
+        assertEquals("{\"type\":\"order\",\"id\":42,\"customer\":{\"name\":\"Jo\\\"hn\"},\"items\":[[\"a\"],1],\"echo\":\"Jo\\\"hn\",\"paid\":true}", json.toString());
+        assertEquals("Jo\"hn", json.get("customer.name", ""));
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("id", 1.5);
+        values.put("name", null);
+        values.put("items", JSON.newArray());
+        values.put("paid", false);
+        assertEquals("{\"type\":\"order\",\"id\":1.5,\"customer\":{\"name\":null},\"items\":[[],1],\"echo\":null,\"paid\":false}", new String(template.renderBytes(values), JSON.DEFAULT_CHARSET));
+
+        try {
+            template.render("x", "y", null, true);
+            fail("Slot type should be checked");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        JSON built = JSON.builder().startArray().value(JSONTemplate.placeholder("v")).endArray().build();
+        assertEquals("[\"x\"]", JSONTemplate.compile(built).render("x").toString());
+    }
+
+    @Test
+    public void testFragmentComposition() throws IOException {
+        JSON profile = JSON.fromString("{\"name\":\"John\"}");
+        JSON card = JSON.fromString("[1,2]");
+
+        Map<String, JSON> fragments = new LinkedHashMap<String, JSON>();
+        fragments.put("profile", profile);
+        fragments.put("card", card);
+        assertEquals("{\"profile\":{\"name\":\"John\"},\"card\":[1,2]}", JSON.composeObject(fragments).toString());
+        assertEquals("[{\"name\":\"John\"},[1,2]]", JSON.composeArray(profile, card).toString());
+        assertEquals(JSON.StorageType.String, profile.getCurrentStorageType());
+
+        Raw raw = new Raw();
+        raw.data = profile;
+        assertEquals("{\"data\":{\"name\":\"John\"}}", JSON.getDefaultObjectMapper().writeValueAsString(raw));
+        assertEquals(JSON.StorageType.String, profile.getCurrentStorageType());
+
+        JSON.setFragmentVerification(JSON.FragmentVerification.Always);
+        try {
+            JSON.composeArray(JSON.fromString("{broken"));
+            fail("Invalid fragment should be detected");
+        } catch (IllegalStateException expected) {
+        } finally {
+            JSON.setFragmentVerification(JSON.FragmentVerification.None);
+        }
+    }
+
+    @Test
+    public void testSelfSerializationPassThrough() throws IOException {
+        ObjectMapper objectMapper = JSON.getDefaultObjectMapper();
+
+        Complex complex = new Complex();
+        complex.setMyJSON(JSON.fromString("{\"x\":\"a b\"}"));
+        assertEquals("{\"myJSON\":{\"x\":\"a b\"}}", objectMapper.writeValueAsString(complex));
+        assertEquals(JSON.StorageType.String, complex.getMyJSON().getCurrentStorageType());
+
+        complex.setMyJSON(JSON.fromString("{ \"x\" : 1 }"));
+        assertEquals("{\"myJSON\":{\"x\":1}}", objectMapper.writeValueAsString(complex));
+
+        complex.setMyJSON(JSON.fromString("{\"x\":2}"));
+        assertEquals(2, JSON.serialize(complex).get("myJSON.x", 0).intValue());
+
+        RawHolder holder = objectMapper.readValue("{\"data\": { \"a\" : [1, 2] }, \"version\": 3}", RawHolder.class);
+        assertEquals(JSON.StorageType.String, holder.data.getCurrentStorageType());
+        assertEquals("{\"a\":[1,2]}", holder.data.toString());
+        assertEquals(3, holder.version);
+    }
+
+    @Test
+    public void testJavaSerializationFormat() throws IOException, ClassNotFoundException {
+        JSON node = JSON.fromNode(JSON.newObjectNode());
+        node.set("int", 1).set("long", 1L << 40).set("double", 1.5).set("big", new BigDecimal("1.25"))
+                .set("text", "za\u017c\u00f3\u0142\u0107").set("flag", true).set("none", null)
+                .set("items[]", JSON.fromString("{\"id\":1,\"name\":\"a\"}"))
+                .set("items[]", JSON.fromString("{\"id\":2,\"name\":\"b\"}"));
+        JSON nodeCopy = javaSerializationRoundTrip(node);
+        assertEquals(JSON.StorageType.NodeTree, nodeCopy.getCurrentStorageType());
+        assertEquals(node.node(), nodeCopy.node());
+
+        JSON text = JSON.fromString("{ \"pretty\" : true }");
+        JSON textCopy = javaSerializationRoundTrip(text);
+        assertEquals(JSON.StorageType.String, textCopy.getCurrentStorageType());
+        assertEquals("{ \"pretty\" : true }", textCopy.toString());
+
+        StringBuilder large = new StringBuilder("[");
+        for (int i = 0; i < 20000; i++) {
+            large.append(i).append(',');
+        }
+        large.append("\"end\"]");
+        assertEquals(20001, javaSerializationRoundTrip(JSON.fromString(large.toString())).nodeArray().size());
+    }
+
+    @Test
+    public void testJavaSerializationLegacyFormat() throws IOException, ClassNotFoundException {
+        String legacy = "aced00057372002c636f6d2e7370726f75746967792e636f6d6d6f6e732e6a736f6e72696768742e6a61636b736f6e2e" +
+                "4a534f4e929322132e41a8c30300034c00116c6f63616c4f626a6563744d617070657274002d4c636f6d2f6661737465" +
+                "72786d6c2f6a61636b736f6e2f6461746162696e642f4f626a6563744d61707065723b4c00037374727400124c6a6176" +
+                "612f6c616e672f537472696e673b4c000d737472466f726d617474696e677400394c636f6d2f7370726f75746967792f" +
+                "636f6d6d6f6e732f6a736f6e72696768742f6a61636b736f6e2f4a534f4e24466f726d617474696e673b7870770a0100" +
+                "077b2276223a317d78";
+        byte[] serialized = new byte[legacy.length() / 2];
+        for (int i = 0; i < serialized.length; i++) {
+            serialized[i] = (byte) Integer.parseInt(legacy.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        JSON deserialized = (JSON) in.readObject();
+        assertEquals("{\"v\":1}", deserialized.toStringCompact());
+    }
+
+    private static JSON javaSerializationRoundTrip(JSON src) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(src);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray()));
+        return (JSON) in.readObject();
+    }
+
+    @Test
+    public void testFormats() throws IOException {
+        JSON json = JSON.fromString("{\"hello\":\"world\"}");
+        assertEquals("{\"hello\":\"world\"}", new String(json.toBytes(JSON.Format.Text), JSON.DEFAULT_CHARSET));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        json.writeTo(out);
+        assertEquals("world", JSON.fromBytes(out.toByteArray(), JSON.Format.Text).get("hello", ""));
+
+        assertEquals("[1]", new String(JSON.builder(JSON.Format.Text).startArray().value(1).endArray().buildBytes(), JSON.DEFAULT_CHARSET));
+
+        try {
+            json.toBytes(JSON.Format.Smile);
+            fail("Smile format provider is not available in this module");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testFrozen() throws InterruptedException {
+        JSON source = JSON.fromString("{\"flags\":{\"beta\":true},\"limits\":[10,20]}");
+        final JSON frozen = JSON.immutable(source);
+        assertTrue(frozen.isFrozen());
+        assertFalse(source.isFrozen());
+        assertSame(frozen, JSON.immutable(frozen));
+        assertEquals(JSON.StorageType.NodeTree, frozen.getCurrentStorageType());
+
+        try {
+            frozen.set("flags.beta", false);
+            fail("Frozen JSON should reject mutation");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            frozen.remove("limits[0]");
+            fail("Frozen JSON should reject mutation");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        source.set("flags.beta", false);
+        assertTrue(frozen.get("flags.beta", false));
+        assertSame(frozen.get("flags"), frozen.get("flags"));
+        assertNull(frozen.get("flags.gamma"));
+        assertSame(frozen.toStringCompact(), frozen.toStringCompact());
+        assertSame(frozen.toStringPretty(), frozen.toStringPretty());
+
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        if (frozen.get("limits[1]", 0) != 20) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(failed[0]);
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        JSON base = JSON.fromString("{\"page\":{\"title\":\"Home\",\"meta\":{\"lang\":\"en\"}},\"items\":[{\"id\":1},{\"id\":2}],\"footer\":{\"year\":2017}}");
+        base.node();
+
+        JSON copy = base.copy();
+        assertTrue(copy.isCopyOnWrite());
+        assertSame(base.node(), copy.node());
+
+        copy.set("page.meta.lang", "pl");
+        copy.set("items[1].id", 3);
+        copy.set("items[]", JSON.fromString("{\"id\":4}"));
+        copy.remove("footer.year");
+
+        assertEquals("{\"page\":{\"title\":\"Home\",\"meta\":{\"lang\":\"en\"}},\"items\":[{\"id\":1},{\"id\":2}],\"footer\":{\"year\":2017}}", base.toStringCompact());
+        assertEquals("{\"page\":{\"title\":\"Home\",\"meta\":{\"lang\":\"pl\"}},\"items\":[{\"id\":1},{\"id\":3},{\"id\":4}],\"footer\":{}}", copy.toStringCompact());
+        assertSame(base.get("items[0]"), copy.get("items[0]"));
+        assertSame(base.get("page.title"), copy.get("page.title"));
+        assertSame(copy, copy.remove(null));
+
+        base.set("page.title", "Start");
+        assertEquals("Home", copy.get("page.title", ""));
+
+        copy.nodeObject().put("direct", true);
+        assertFalse(copy.isCopyOnWrite());
+        assertFalse(base.has("direct"));
+
+        JSON frozen = JSON.immutable(base);
+        JSON variant = frozen.copy().set("page.title", "Variant");
+        assertEquals("Start", frozen.get("page.title", ""));
+        assertEquals("Variant", variant.get("page.title", ""));
+    }
+
+    @Test
+    public void testTapeStorage() {
+        String source = "{\"name\":\"John\",\"age\":25,\"big\":12345678901234567890,\"ratio\":0.5,\"huge\":9223372036854775807,\"negative\":-36028797018963969," +
+                "\"tags\":[\"a\",\"b\",null],\"address\":{\"city\":\"Boston\",\"zip\":null},\"empty\":{},\"list\":[]}";
+        JSON json = JSON.tape(source);
+        assertEquals(JSON.StorageType.Tape, json.getCurrentStorageType());
+        assertTrue(json.isObject());
+
+        assertEquals("John", json.get("name", ""));
+        assertEquals(25, (int) json.get("age", 0));
+        assertEquals("b", json.get("tags[1]", ""));
+        assertEquals("Boston", json.get("address.city", ""));
+        assertTrue(json.has("address.city"));
+        assertFalse(json.has("address.zip"));
+        assertFalse(json.has("tags[2]"));
+        assertFalse(json.has("tags[3]"));
+        assertFalse(json.has("missing.path"));
+        assertTrue(json.has("tags", "a"));
+        assertEquals(1, json.indexOf("tags", "b"));
+        assertEquals(JSON.StorageType.Tape, json.getCurrentStorageType());
+
+        assertEquals(JSON.fromString(source).toStringCompact(), json.toStringCompact());
+        assertEquals("Boston", json.get("address", TestAddress.class).city);
+        assertEquals(JSON.StorageType.Tape, json.getCurrentStorageType());
+
+        json.set("age", 26);
+        assertEquals(JSON.StorageType.NodeTree, json.getCurrentStorageType());
+        assertEquals(26, (int) json.get("age", 0));
+        assertEquals(0.5, json.get("ratio", 0.0), 0.0);
+    }
+
+    @Test
+    public void testOffHeap() throws IOException {
+        OffHeapJSON json = OffHeapJSON.fromString("{\"name\":\"John\",\"address\":{\"city\":\"Boston\",\"zip\":null},\"tags\":[\"a\",\"b\"]}");
+        assertEquals("Boston", json.get("address.city").asText());
+        assertEquals("b", json.get("tags[1]", String.class));
+        assertNull(json.get("tags[2]"));
+        assertTrue(json.has("name"));
+        assertFalse(json.has("address.zip"));
+        assertFalse(json.has("missing"));
+        assertEquals("Boston", json.deserialize(TestPersonWithAddress.class).address.city);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        json.writeTo(out);
+        assertEquals(json.size(), out.size());
+        assertEquals("John", JSON.fromBytes(out.toByteArray()).get("name", ""));
+
+        JsonParser parser = json.parser("tags");
+        assertEquals(JsonToken.START_ARRAY, parser.getCurrentToken());
+        json.close();
+        assertEquals("a", parser.nextTextValue());
+        parser.close();
+
+        assertTrue(json.isClosed());
+        try {
+            json.get("name");
+            fail("Closed off-heap JSON should not be accessible");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testInterned() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                s.append(',');
+            }
+            s.append("{\"id\":").append(i).append(",\"status\":\"ACTIVE\",\"note\":\"").append("a very long note that should never be interned ").append(i).append("\"}");
+        }
+        s.append(']');
+
+        JSONInterner interner = new JSONInterner();
+        JSON json = JSON.interned(s.toString(), interner);
+        assertEquals(new JSON(s.toString()), json);
+        assertSame(json.get("[0].status"), json.get("[99].status"));
+        assertNotSame(json.get("[0].note"), json.get("[1].note"));
+        assertEquals(99, interner.getValueHits());
+        assertEquals(297, interner.getNameHits());
+        assertTrue(interner.getSavedBytes() > 0);
+        assertEquals(4, interner.size());
+
+        JSONInterner bounded = new JSONInterner(2, 0);
+        JSON.interned(s.toString(), bounded);
+        assertEquals(2, bounded.size());
+        assertEquals(0, bounded.getValueHits());
+    }
+
+    @Test
+    public void testNumericArrays() {
+        String s = "{\"vector\":[0.5,1.25,-3.0,4.0],\"ids\":[1,2,3,10000000000],\"mixed\":[1,2.5,3,4],\"short\":[1,2]}";
+        int threshold = JSON.getNumericArrayThreshold();
+        JSON.setNumericArrayThreshold(3);
+        try {
+            JSON json = new JSON(s);
+            assertTrue(json.get("vector") instanceof NumericArrayNode);
+            assertTrue(json.get("ids") instanceof NumericArrayNode);
+            assertFalse(json.get("mixed") instanceof NumericArrayNode);
+            assertFalse(json.get("short") instanceof NumericArrayNode);
+            assertArrayEquals(new double[] {0.5, 1.25, -3.0, 4.0}, json.getDoubleArray("vector"), 0.0);
+            assertArrayEquals(new long[] {1, 2, 3, 10000000000L}, json.getLongArray("ids"));
+            assertArrayEquals(new long[] {1, 2}, json.getLongArray("short"));
+            assertEquals(1.25, json.get("vector[1]", 0.0), 0.0);
+            assertTrue(json.has("ids", 2));
+            assertEquals(3, json.indexOf("ids", 10000000000L));
+            assertEquals(s, json.toStringCompact());
+            assertEquals(JSON.parse(s), JSON.parse(json.toStringPretty()));
+
+            json.set("ids[1]", 20);
+            json.remove("vector[0]");
+            assertEquals(20, (int) json.get("ids[1]", Integer.class));
+            assertEquals(3, json.get("vector").size());
+            assertFalse(json.get("ids") instanceof NumericArrayNode);
+
+            //trees handed out for direct modification hold regular array nodes
+            JSON direct = new JSON("{\"a\":[1,2,3],\"b\":[{\"c\":[4,5,6]}]}");
+            assertTrue(direct.get("a") instanceof NumericArrayNode);
+            ((ArrayNode) direct.nodeObject().get("a")).add(4);
+            ((ArrayNode) direct.nodeObject().get("b").get(0).get("c")).add(7);
+            assertEquals("{\"a\":[1,2,3,4],\"b\":[{\"c\":[4,5,6,7]}]}", direct.toStringCompact());
+            assertEquals(3, new JSON("[1,2,3]").nodeArray().size());
+
+            //documents never read before are written to directly
+            assertEquals("{\"a\":[5,2,3]}", new JSON("{\"a\":[1,2,3]}").set("a[0]", 5).toStringCompact());
+            assertEquals("{\"a\":[2,3]}", new JSON("{\"a\":[1,2,3]}").remove("a[0]").toStringCompact());
+            assertEquals("{\"a\":[1,2,3,4]}", new JSON("{\"a\":[1,2,3]}").set("a[]", 4).toStringCompact());
+            assertEquals("[5,2,3]", new JSON("[1,2,3]").set("[0]", 5).toStringCompact());
+
+            JSON copy = new JSON(s);
+            copy.node();
+            JSON other = copy.copy();
+            other.set("vector[0]", 9);
+            assertEquals(0.5, copy.get("vector[0]", 0.0), 0.0);
+            assertEquals(9, (int) other.get("vector[0]", Integer.class));
+        } finally {
+            JSON.setNumericArrayThreshold(threshold);
+        }
+        assertFalse(new JSON(s).get("vector") instanceof NumericArrayNode);
+        assertArrayEquals(new double[] {0.5, 1.25, -3.0, 4.0}, new JSON(s).getDoubleArray("vector"), 0.0);
+        assertNull(new JSON(s).getDoubleArray("missing"));
+    }
+
+    @Test
+    public void testColumns() {
+        String s = "{\"points\":[{\"ts\":1,\"v\":0.5,\"host\":\"a\"},{\"ts\":2,\"host\":\"b\",\"extra\":{\"x\":[1]}},{\"ts\":3,\"v\":2,\"host\":\"a\"},null,{\"ts\":null,\"v\":\"x\",\"host\":{}}]}";
+        for (JSON json : new JSON[] {new JSON(s), JSON.fromNode(JSON.parse(s)), JSON.tape(s)}) {
+            JSONColumns table = json.columns("points", JSONColumns.longs("ts"), JSONColumns.doubles("v"), JSONColumns.strings("host"));
+            assertEquals(5, table.size());
+            assertArrayEquals(new long[] {1, 2, 3, 0, 0}, table.getLongs("ts"));
+            assertArrayEquals(new double[] {0.5, 0, 2, 0, 0}, table.getDoubles("v"), 0.0);
+            assertArrayEquals(new int[] {0, 1, 0, -1, -1}, table.getCodes("host"));
+            assertArrayEquals(new String[] {"a", "b"}, table.getDictionary("host"));
+            assertEquals("b", table.column("host").getString(1));
+            assertTrue(table.column("v").isNull(1));
+            assertFalse(table.column("v").isNull(2));
+            assertEquals(2, table.getNulls("ts").cardinality());
+            assertEquals(3, table.getNulls("v").cardinality());
+        }
+        assertNull(new JSON(s).columns("missing", JSONColumns.longs("ts")));
+        assertNull(new JSON(s).columns("points[0]", JSONColumns.longs("ts")));
+        assertEquals(0, new JSON("[]").columns(null, JSONColumns.longs("ts")).size());
+    }
+
+    @Test
+    public void testProjection() {
+        String s = "{\"id\":7,\"name\":\"John\",\"address\":{\"city\":\"Boston\",\"zip\":\"02101\"},\"orders\":[{\"no\":1,\"items\":[1,2]},{\"no\":2,\"items\":[3]}],\"meta\":{\"a\":{\"x\":1,\"y\":2},\"b\":{\"x\":3}}}";
+        for (JSON json : new JSON[] {new JSON(s), JSON.fromNode(JSON.parse(s)), JSON.tape(s)}) {
+            JSON projected = json.project("name", "address", "orders[*].no", "meta.*.x");
+            assertEquals("{\"name\":\"John\",\"address\":{\"city\":\"Boston\",\"zip\":\"02101\"},\"orders\":[{\"no\":1},{\"no\":2}],\"meta\":{\"a\":{\"x\":1},\"b\":{\"x\":3}}}", projected.toStringCompact());
+            assertEquals("Boston", projected.get("address.city", String.class));
+            assertFalse(projected.has("id"));
+        }
+
+        JSON json = new JSON(s);
+        assertEquals("{\"orders\":[null,{\"items\":[3]}]}", json.project("orders[1].items").toStringCompact());
+        assertEquals("{}", json.project("name.first").toStringCompact());
+        assertEquals(JSON.parse(s), json.node(JSONProjection.compile("")));
+        TestPersonWithAddress person = json.project(JSONProjection.compile("name", "address.city")).deserialize(TestPersonWithAddress.class);
+        assertEquals("John", person.name);
+        assertEquals("Boston", person.address.city);
+        assertNull(person.address.zip);
+        assertTrue(json.node(JSONProjection.compile("missing")).isObject());
+    }
+
+    @Test
+    public void testQuery() {
+        String s = "{\"store\":{\"book\":[{\"title\":\"A\",\"price\":8.95,\"tags\":[\"x\"]},{\"title\":\"B\",\"price\":12.99},{\"title\":\"C\",\"price\":8.99,\"isbn\":\"1\"},{\"title\":\"D\",\"price\":22.99,\"isbn\":\"2\"}],\"bicycle\":{\"color\":\"red\",\"price\":19.95}}}";
+        for (JSON json : new JSON[] {new JSON(s), JSON.fromNode(JSON.parse(s)), JSON.tape(s)}) {
+            assertEquals(Arrays.asList("A", "B", "C", "D"), texts(json.query("$.store.book[*].title")));
+            assertEquals(Arrays.asList("A", "B", "C", "D"), texts(json.query("store.book[*].title")));
+            assertEquals(Arrays.asList("B", "D"), texts(json.query("$.store.book[?(@.price > 10)].title")));
+            assertEquals(Arrays.asList("C", "D"), texts(json.query("$..book[?(@.isbn)].title")));
+            assertEquals(Arrays.asList("C"), texts(json.query("$..book[?(@.isbn && @.price < 10 || @.title == 'Z')].title")));
+            assertEquals(Arrays.asList("D"), texts(json.query("$.store.book[-1].title")));
+            assertEquals(Arrays.asList("B", "C"), texts(json.query("$.store.book[1:3].title")));
+            assertEquals(Arrays.asList("A", "C"), texts(json.query("$.store.book[::2]['title']")));
+            assertEquals(Arrays.asList("D", "C"), texts(json.query("$.store.book[:-3:-1].title")));
+            assertEquals(5, count(json.query("$..price")));
+            assertEquals(2, count(json.query("$.store.*")));
+            assertEquals(Arrays.asList("x"), texts(json.query("$..tags[0]")));
+            assertEquals(0, count(json.query("$.missing[*]")));
+
+            List<Double> prices = json.query("$.store.book[?(@.title != 'A')].price", Double.class).collect(Collectors.<Double>toList());
+            assertEquals(Arrays.asList(12.99, 8.99, 22.99), prices);
+            try {
+                json.query("$.store.book[*]", Double.class).count();
+                fail();
+            } catch (RuntimeException expected) {
+            }
+
+            //stream consumed partially is closed explicitly
+            Stream<JsonNode> titles = json.query("$..title");
+            try {
+                assertEquals("A", titles.findFirst().get().asText());
+            } finally {
+                titles.close();
+            }
+        }
+        assertEquals(1, count(new JSON("[1]").query("$")));
+
+        try {
+            JSONPath.compile("$.store[?(@.price >)]");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static List<String> texts(Stream<JsonNode> nodes) {
+        List<String> texts = new ArrayList<String>();
+        for (JsonNode node : nodes.collect(Collectors.<JsonNode>toList())) {
+            texts.add(node.asText());
+        }
+        return texts;
+    }
+
+    private static int count(Stream<JsonNode> nodes) {
+        return (int) nodes.count();
+    }
+
+    @Test
+    public void testIndex() {
+        JSON json = new JSON("{\"tags\":[\"a\",\"b\",\"c\",\"b\"],\"nested\":{\"ids\":[1,2,3]}}");
+        json.index("tags").index("nested.ids");
+        assertTrue(json.isIndexed("tags"));
+        assertEquals(1, json.indexOf("tags", "b"));
+        assertTrue(json.has("tags", "c"));
+        assertFalse(json.has("tags", "z"));
+        assertEquals(2, json.indexOf("nested.ids", 3));
+
+        json.set("tags[0]", "z");
+        assertEquals(0, json.indexOf("tags", "z"));
+        assertEquals(-1, json.indexOf("tags", "a"));
+        json.set("tags[]", "d");
+        assertEquals(4, json.indexOf("tags", "d"));
+        json.remove("tags[1]");
+        assertEquals(2, json.indexOf("tags", "b"));
+        json.set("nested", JSON.parse("{\"ids\":[7]}"));
+        assertEquals(0, json.indexOf("nested.ids", 7));
+        assertFalse(json.has("nested.ids", 1));
+
+        json.unindex("tags");
+        assertFalse(json.isIndexed("tags"));
+        assertEquals(2, json.indexOf("tags", "b"));
+        json.remove(null);
+    }
+
+    @Test
+    public void testEdit() {
+        JSON json = new JSON("{\"name\":\"John\",\"tags\":[\"a\",\"b\",\"c\",\"d\"],\"address\":{\"city\":\"Paris\"}}");
+        JSON copy = json.copy();
+        JSONEdit edit = json.edit()
+                .set("name", "Jane")
+                .set("address.zip", "75001")
+                .set("contact.emails[0]", "jane@example.com")
+                .remove("tags[1]")
+                .remove("tags[3]")
+                .set("tags[2]", "C")
+                .remove("tags[]", "a")
+                .append("tags", "e");
+        assertEquals(8, edit.size());
+        edit.apply();
+        assertEquals("{\"name\":\"Jane\",\"tags\":[\"C\",\"e\"],\"address\":{\"city\":\"Paris\",\"zip\":\"75001\"},\"contact\":{\"emails\":[\"jane@example.com\"]}}", json.toStringCompact());
+        assertEquals("{\"name\":\"John\",\"tags\":[\"a\",\"b\",\"c\",\"d\"],\"address\":{\"city\":\"Paris\"}}", copy.toStringCompact());
+
+        json.index("tags");
+        assertEquals(1, json.indexOf("tags", "e"));
+        json.edit().append("tags", "f").remove("tags[0]").apply();
+        assertEquals(1, json.indexOf("tags", "f"));
+
+        try {
+            json.edit().atomic(true).set("city", "Berlin").set("name.first", "Jane").apply();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertNull(json.get("city"));
+        assertEquals("Jane", json.get("name", String.class));
+
+        try {
+            json.edit().set("a.b", 1).set("a[0]", 2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            json.edit().remove("");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        //indexes refer to the array before the edit, unlike successive removals
+        assertEquals("{\"a\":[3]}", new JSON("{\"a\":[1,2,3]}").edit().remove("a[0]").remove("a[1]").apply().toStringCompact());
+        assertEquals("{\"a\":[2]}", new JSON("{\"a\":[1,2,3]}").remove("a[0]").remove("a[1]").toStringCompact());
+
+        JSON array = new JSON("[1,2,3]");
+        array.edit().set("[4]", 5).remove("[0]").apply();
+        assertEquals("[2,3,null,5]", array.toStringCompact());
+    }
+
+    @Test
+    public void testCursor() {
+        JSON json = new JSON("{\"order\":{\"id\":1,\"items\":[\"a\"],\"meta\":{\"x\":1,\"y\":2}}}");
+        JSONCursor items = json.at("order.items");
+        for (int i = 0; i < 3; i++) {
+            items.append("i" + i);
+        }
+        assertEquals(4, items.size());
+        assertEquals("[\"a\",\"i0\",\"i1\",\"i2\"]", json.get("order.items").toString());
+
+        JSONCursor meta = json.at("order.meta");
+        assertEquals(Integer.valueOf(1), meta.get("x", Integer.class));
+        assertTrue(meta.has("y"));
+        meta.set("z.deep", 3).remove("x");
+        assertEquals("{\"y\":2,\"z\":{\"deep\":3}}", json.get("order.meta").toString());
+
+        //copies keep their own state even when modified through a cursor
+        JSON copy = json.copy();
+        items.set("[0]", "b");
+        assertEquals("a", copy.get("order.items[0]", String.class));
+        assertEquals("b", json.get("order.items[0]", String.class));
+
+        //cursor follows replaced containers and fails when its container is gone
+        json.set("order.items", JSON.parse("[\"c\"]"));
+        assertEquals("c", items.get("[0]", String.class));
+        json.remove("order.meta");
+        try {
+            meta.get("y");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        json.index("order.items");
+        items.append("d");
+        assertEquals(1, json.indexOf("order.items", "d"));
+
+        JSONCursor created = json.at("missing.list");
+        assertNull(created.node());
+        created.append(1);
+        assertEquals("[1]", json.get("missing.list").toString());
+    }
+
+    @Test
+    public void testPatch() {
+        JSON source = new JSON("{\"name\":\"John\",\"a/b\":1,\"list\":[1,2,3,4,5],\"items\":[{\"id\":1,\"v\":\"x\"},{\"id\":2,\"v\":\"y\"}],\"old\":true}");
+        JSON target = new JSON("{\"name\":\"Jane\",\"a/b\":1,\"list\":[5,1,2,4,6],\"items\":[{\"id\":1,\"v\":\"x\"},{\"id\":2,\"v\":\"z\"}],\"new\":null}");
+        JSON patch = JSON.diff(source, target);
+        assertTrue(patch.node().size() <= 7);
+        JSON patched = source.copy().apply(patch);
+        assertEquals(target.node(), patched.node());
+        assertTrue(patch.toStringCompact().contains("\"op\":\"move\""));
+        assertTrue(patch.toStringCompact().contains("\"path\":\"/items/1/v\""));
+        assertEquals("{\"name\":\"John\",\"a/b\":1,\"list\":[1,2,3,4,5],\"items\":[{\"id\":1,\"v\":\"x\"},{\"id\":2,\"v\":\"y\"}],\"old\":true}", source.toStringCompact());
+        assertEquals(0, JSON.diff(source, source.copy()).node().size());
+
+        //random permutations round trip
+        Random random = new Random(42);
+        for (int n = 0; n < 50; n++) {
+            JSON from = JSON.newArray();
+            JSON to = JSON.newArray();
+            for (int i = 0; i < random.nextInt(12); i++) {
+                from.set("[]", random.nextInt(6));
+            }
+            for (int i = 0; i < random.nextInt(12); i++) {
+                to.set("[]", random.nextInt(6));
+            }
+            assertEquals(to.node(), from.copy().apply(JSON.diff(from, to)).node());
+        }
+
+        JSON doc = new JSON("{\"a\":{\"b\":[1,2]},\"c\":1}");
+        doc.apply(new JSON("[{\"op\":\"add\",\"path\":\"/a/b/-\",\"value\":3},{\"op\":\"copy\",\"from\":\"/a/b\",\"path\":\"/d\"},{\"op\":\"replace\",\"path\":\"/c\",\"value\":2},{\"op\":\"test\",\"path\":\"/c\",\"value\":2.0}]"));
+        assertEquals("{\"a\":{\"b\":[1,2,3]},\"c\":2,\"d\":[1,2,3]}", doc.toStringCompact());
+        try {
+            doc.apply(new JSON("[{\"op\":\"remove\",\"path\":\"/c\"},{\"op\":\"test\",\"path\":\"/a/b/0\",\"value\":9}]"));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(Integer.valueOf(2), doc.get("c", Integer.class));
+
+        doc.merge(new JSON("{\"a\":{\"b\":null,\"e\":1},\"c\":null,\"f\":[1]}"));
+        assertEquals("{\"a\":{\"e\":1},\"d\":[1,2,3],\"f\":[1]}", doc.toStringCompact());
+    }
+
+    @Test
+    public void testHash() {
+        JSON json = new JSON("{\"a\":{\"b\":[1,2.5,{\"c\":true}],\"d\":\"x\"},\"e\":null}");
+        assertEquals(new JSON("{\"e\":null,\"a\":{\"d\":\"x\",\"b\":[1.0,25e-1,{\"c\":true}]}}").hash(), json.hash());
+        assertEquals(new JSON("[1,2.5,{\"c\":true}]").hash(), json.hash("a.b"));
+        assertFalse(json.hash("a.b") == new JSON("[2.5,1,{\"c\":true}]").hash());
+        assertFalse(json.hash() == new JSON("{\"a\":{\"b\":[1,2.5,{\"c\":true}],\"d\":\"y\"},\"e\":null}").hash());
+        assertEquals(0, json.hash("missing"));
+
+        //cached hashes follow modifications made by all kinds of writes
+        long original = json.hash();
+        JSON copy = json.copy();
+        json.set("a.b[2].c", false);
+        assertEquals(new JSON(json.toStringCompact()).hash(), json.hash());
+        json.remove("a.b[0]");
+        assertEquals(new JSON(json.toStringCompact()).hash(), json.hash());
+        json.at("a.b").append("z");
+        assertEquals(new JSON(json.toStringCompact()).hash(), json.hash());
+        json.edit().set("a.d", "q").remove("e").apply();
+        assertEquals(new JSON(json.toStringCompact()).hash(), json.hash(""));
+        json.apply(new JSON("[{\"op\":\"add\",\"path\":\"/a/b/0\",\"value\":7}]"));
+        assertEquals(new JSON(json.toStringCompact()).hash(), json.hash());
+        assertEquals(new JSON(json.toStringCompact()).hash("a.b"), json.hash("a.b"));
+        assertEquals(original, copy.hash());
+        assertFalse(original == json.hash());
+    }
+
+    @Test
+    public void testCanonical() throws IOException {
+        JSON json = new JSON("{\"b\":[1.0,2.50,1e21,1E-7,0.000001,-0.0,100],\"a\":{\"y\":\"\\u00e9\\t\\u001f\\\"/\",\"x\":null},\"\\u20ac\":true,\"A\":false}");
+        String expected = "{\"A\":false,\"a\":{\"x\":null,\"y\":\"\u00e9\\t\\u001f\\\"/\"},\"b\":[1,2.5,1e+21,1e-7,0.000001,0,100],\"\u20ac\":true}";
+        assertEquals(expected, json.toStringCanonical());
+        assertEquals(expected, json.toString(JSON.Formatting.Canonical));
+        assertEquals(expected, new JSON(json.toStringPretty()).toStringCanonical());
+        assertEquals("{\"b\":[1.0,2.5", json.toStringCompact().substring(0, 13));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        json.writeTo(out, JSON.Formatting.Canonical);
+        assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+
+        JSON built = JSON.builder(JSON.Formatting.Canonical).startObject().field("z", 1.50).field("m", "v").endObject().build();
+        assertEquals("{\"m\":\"v\",\"z\":1.5}", built.toString());
+        assertEquals("{\"m\":\"v\",\"z\":1.5}", built.toStringCompact());
+
+        JSON frozen = new JSON("{\"b\":1,\"a\":2}").freeze();
+        assertEquals("{\"a\":2,\"b\":1}", frozen.toStringCanonical());
+        assertEquals("{\"b\":1,\"a\":2}", frozen.toStringCompact());
+    }
+
+    @Test
+    public void testParseCache() {
+        JSONParseCache cache = new JSONParseCache(1 << 20);
+        JSON.setParseCache(cache);
+        try {
+            String body = "{\"status\":\"UP\",\"checks\":[{\"name\":\"db\",\"ok\":true}]}";
+            JsonNode first = new JSON(body).node();
+            JsonNode second = new JSON(body).node();
+            JsonNode third = new JSON(body).node();
+            assertNotSame(first, second);
+            assertSame(second, third);
+            assertEquals(1, cache.size());
+            assertEquals(2, cache.getMisses());
+            assertEquals(1, cache.getHits());
+
+            //shared tree is copied on write
+            JSON modified = new JSON(body);
+            modified.set("checks[0].ok", false);
+            assertEquals(Boolean.TRUE, new JSON(body).get("checks[0].ok", Boolean.class));
+            assertEquals(Boolean.FALSE, modified.get("checks[0].ok", Boolean.class));
+            modified.nodeObject().put("status", "DOWN");
+            assertEquals("UP", new JSON(body).get("status", String.class));
+
+            //cached document is handed out frozen, sharing the cached tree
+            JSON frozen = JSON.immutable(body);
+            assertTrue(frozen.isFrozen());
+            assertSame(frozen, JSON.immutable(body));
+            assertSame(third, frozen.node());
+
+            //cached tree inserted into other documents is not modified through them
+            JSON host = JSON.newObject();
+            host.set("health", new JSON(body));
+            host.set("health.checks[0].ok", false);
+            ObjectNode foreign = JsonNodeFactory.instance.objectNode();
+            JSON appended = new JSON(body);
+            appended.node();
+            appended.appendTo(foreign, "health");
+            ((ObjectNode) foreign.get("health")).put("status", "DOWN");
+            assertEquals(first, new JSON(body).node());
+            assertEquals(Boolean.FALSE, host.get("health.checks[0].ok", Boolean.class));
+
+            cache.immutable(TestAddress.class);
+            assertEquals("abc", new JSON("\"abc\"").deserialize(String.class));
+            assertEquals("abc", new JSON("\"abc\"").deserialize(String.class));
+            String address = "{\"city\":\"Paris\",\"zip\":\"75001\"}";
+            new JSON(address).deserialize(TestAddress.class);
+            TestAddress a1 = new JSON(address).deserialize(TestAddress.class);
+            assertSame(a1, new JSON(address).deserialize(TestAddress.class));
+            assertNotSame(new JSON(address).deserialize(Map.class), new JSON(address).deserialize(Map.class));
+
+            JSONParseCache small = new JSONParseCache(16 * 40, 40);
+            JSON.setParseCache(small);
+            for (int i = 0; i < 200; i++) {
+                new JSON("{\"n\":" + i + "}").node();
+                new JSON("{\"n\":" + i + "}").node();
+            }
+            assertTrue(small.getEvictions() > 0);
+            assertTrue(small.getWeight() <= 16 * 40);
+        } finally {
+            JSON.setParseCache(null);
+        }
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        JSONMetrics metrics = new JSONMetrics(1);
+        JSON.setMetrics(metrics);
+        try {
+            JSON json = new JSON("{\"a\":1}");
+            json.get("a");
+            json.get("a");
+            json.toStringCompact();
+            json.toString();
+            json.set("b", new TestAddress());
+
+            JSONMetrics.Snapshot snapshot = metrics.snapshot();
+            assertEquals(1, snapshot.getCount(JSONMetrics.Kind.Parse));
+            assertEquals(7, snapshot.getSize(JSONMetrics.Kind.Parse));
+            assertEquals(1, snapshot.getCount(JSONMetrics.Kind.Serialize));
+            assertEquals(1, snapshot.getCount(JSONMetrics.Kind.PrettyPrint));
+            assertEquals(1, snapshot.getCount(JSONMetrics.Kind.ValueToTree));
+            assertEquals(0, snapshot.getCount(JSONMetrics.Kind.TapeToTree));
+            assertEquals(0, snapshot.getCount(JSONMetrics.Kind.Canonicalize));
+            assertTrue(snapshot.getNanos(JSONMetrics.Kind.Parse) >= 0);
+            Map<String, Long> sites = snapshot.getCallSites(JSONMetrics.Kind.Parse);
+            assertEquals(1, sites.size());
+            assertTrue(sites.keySet().iterator().next().startsWith(JSONTest.class.getName() + ".testMetrics("));
+
+            String canonical = json.toStringCanonical();
+            json.writeTo(new ByteArrayOutputStream(), JSON.Formatting.Canonical);
+            snapshot = metrics.snapshot();
+            assertEquals(2, snapshot.getCount(JSONMetrics.Kind.Canonicalize));
+            assertEquals(canonical.length(), snapshot.getSize(JSONMetrics.Kind.Canonicalize));
+
+            metrics.reset();
+            assertEquals(0, metrics.snapshot().getCount(JSONMetrics.Kind.Parse));
+        } finally {
+            JSON.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void testEventListener() {
+        final List<JSONEvent> events = new ArrayList<JSONEvent>();
+        final Set<JSONEvent.Type> enabled = EnumSet.allOf(JSONEvent.Type.class);
+        final long[] threshold = new long[1];
+        JSON.setEventListener(new JSONEventListener() {
+            @Override
+            public boolean isEnabled(JSONEvent.Type type) {
+                return enabled.contains(type);
+            }
+
+            @Override
+            public long getThresholdNanos(JSONEvent.Type type) {
+                return threshold[0];
+            }
+
+            @Override
+            public void onEvent(JSONEvent event) {
+                events.add(event);
+            }
+        });
+        try {
+            JSON json = new JSON("{\"a\":{\"b\":1}}");
+            json.get("a.b");
+            assertEquals(2, events.size());
+            assertEquals(JSONEvent.Type.Parse, events.get(0).getType());
+            assertEquals(JSON.StorageType.String, events.get(0).getStorageType());
+            assertEquals(13, events.get(0).getSize());
+            assertEquals(JSONEvent.Type.ResolvePath, events.get(1).getType());
+            assertEquals("a.b", events.get(1).getPath());
+            assertTrue(events.get(1).getDurationNanos() >= 0);
+
+            events.clear();
+            json.toStringPretty();
+            json.set("c", 2);
+            json.toStringCompact();
+            assertEquals(2, events.size());
+            assertEquals(JSON.Formatting.Pretty, events.get(0).getFormatting());
+            assertEquals(JSON.Formatting.Compact, events.get(1).getFormatting());
+            assertEquals(json.toStringCompact().length(), events.get(1).getSize());
+
+            events.clear();
+            new JSON("[1,2]").deserialize(List.class);
+            assertEquals(1, events.size());
+            assertEquals(JSONEvent.Type.Deserialize, events.get(0).getType());
+            assertEquals(List.class, events.get(0).getTargetClass());
+
+            events.clear();
+            JSON.builder().startObject().field("x", 1).endObject().build();
+            assertEquals(JSONEvent.Type.Build, events.get(0).getType());
+            assertEquals(7, events.get(0).getSize());
+
+            events.clear();
+            TestPOJO decoded = ClassedJSON.deserialize(ClassedJSON.serialize(new TestPOJO("John")));
+            assertEquals("John", decoded.getName());
+            JSONEvent decode = events.get(events.size() - 2);
+            assertEquals(JSONEvent.Type.ClassedDecode, decode.getType());
+            assertEquals(TestPOJO.class, decode.getTargetClass());
+
+            events.clear();
+            enabled.remove(JSONEvent.Type.Parse);
+            threshold[0] = Long.MAX_VALUE;
+            new JSON("{\"a\":1}").get("a");
+            assertTrue(events.isEmpty());
+        } finally {
+            JSON.setEventListener(null);
+        }
+    }
+
+    @Test
+    public void testEventListenerDiscoveryFailure() {
+        //test resources register FailingEventListener as a service
+        assertEquals("{\"a\":1}", new JSON("{\"a\": 1}").toStringCompact());
+        assertNull(JSON.getEventListener());
+    }
+
+    @Test
+    public void testPooledBuilderReleasedOnFailure() {
+        JSON.BuilderRoot pooled = JSON.pooledBuilder(JSON.Formatting.Canonical);
+        try {
+            pooled.value(new JSON("{\"a\":")).build();
+            fail();
+        } catch (RuntimeException expected) {
+        }
+        JSON.BuilderRoot again = JSON.pooledBuilder();
+        assertSame(pooled, again);
+        assertEquals("null", again.valueNull().build().toString());
+
+        JSON.Builder builder = (JSON.Builder) JSON.pooledBuilder();
+        builder.startObject();
+        try {
+            builder.value(1);
+            fail();
+        } catch (RuntimeException expected) {
+        }
+        JSON.BuilderRoot next = JSON.pooledBuilder();
+        assertSame(builder, next);
+        assertEquals("[1]", next.startArray().value(1).endArray().build().toString());
+    }
+
+    @Test
+    public void testComposeArrayOfPrettyFragment() {
+        JSON pretty = new JSON("{\n  \"a\" : 1\n}", JSON.Formatting.Pretty);
+        JSON array = JSON.composeArray(pretty, new JSON("2", JSON.Formatting.Compact));
+        assertEquals("[{\"a\":1},2]", array.toStringCompact());
+
+        JSON compact = JSON.composeArray(new JSON("{\"a\":1}", JSON.Formatting.Compact));
+        assertEquals("[{\"a\":1}]", compact.toStringCompact());
+        assertEquals("{\"a\":1}", pretty.toStringCompact());
+
+        //reading a compact form does not change storage of a string-backed document
+        JSON spaced = new JSON("{ \"a\" : [1, 2.5, \"x y\"] }");
+        assertEquals("{\"a\":[1,2.5,\"x y\"]}", spaced.toStringCompact());
+        assertEquals(JSON.StorageType.String, spaced.getCurrentStorageType());
+        assertEquals(JSON.StorageType.String, pretty.getCurrentStorageType());
+    }
+
+    @Test
+    public void testJavaSerializationCorruptFormatting() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(new JSON("{\"zz\":1}", JSON.Formatting.Compact));
+        out.close();
+        byte[] serialized = buffer.toByteArray();
+        int body = new String(serialized, "ISO-8859-1").indexOf("{\"zz\":1}");
+        assertTrue(body > 5);
+        assertEquals(JSON.Formatting.Compact.ordinal(), serialized[body - 5]);
+        assertEquals(8, serialized[body - 1]);
+
+        for (byte corrupt : new byte[] {-1, 100}) {
+            //formatting ordinal precedes the 4 bytes of body length
+            serialized[body - 5] = corrupt;
+            try {
+                new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+                fail("Corrupt formatting should be rejected");
+            } catch (InvalidObjectException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testCopyOnWriteInsertedIntoOtherDocument() {
+        JSON a = JSON.fromString("{\"x\":{\"y\":1}}");
+        a.node();
+        JSON aCopy = a.copy();
+
+        JSON other = JSON.fromString("{}");
+        other.set("a", aCopy);
+        other.set("a.x.y", 2);
+        other.set("a.z", 3);
+        assertEquals("{\"a\":{\"x\":{\"y\":2},\"z\":3}}", other.toStringCompact());
+        assertEquals("{\"x\":{\"y\":1}}", a.toStringCompact());
+        assertEquals("{\"x\":{\"y\":1}}", aCopy.toStringCompact());
+
+        aCopy.set("x.y", 4);
+        assertEquals(2, (int) other.get("a.x.y", Integer.class));
+
+        JSON raw = new JSON();
+        raw.setRaw(aCopy, false);
+        raw.set("x.y", 5);
+        assertEquals(4, (int) aCopy.get("x.y", Integer.class));
+        assertEquals(1, (int) a.get("x.y", Integer.class));
+        assertEquals(5, (int) raw.get("x.y", Integer.class));
+
+        JSON root = new JSON();
+        root.set(JSON.immutable(a));
+        root.set("x.y", 6);
+        assertEquals(1, (int) a.get("x.y", Integer.class));
+
+        assertSame(aCopy, aCopy.remove(null));
+    }
+
+    @Test
+    public void testNumericArraysEquality() {
+        String s = "{\"m\":[[1,2,3],[4,5,6]],\"o\":{\"v\":[7,8,9]}}";
+        JSON plain = new JSON(s);
+        plain.node();
+        JSON plainPatch = new JSON("[{\"op\":\"test\",\"path\":\"/m\",\"value\":[[1,2,3],[4,5,6]]},{\"op\":\"test\",\"path\":\"/o\",\"value\":{\"v\":[7,8,9]}}]");
+        plainPatch.node();
+        int threshold = JSON.getNumericArrayThreshold();
+        JSON.setNumericArrayThreshold(3);
+        try {
+            JSON json = new JSON(s);
+            assertTrue(json.get("m[1]") instanceof NumericArrayNode);
+            assertTrue(json.has("m", new int[] {4, 5, 6}));
+            assertEquals(1, json.indexOf("m", new int[] {4, 5, 6}));
+            assertTrue(json.has("o.v", 8));
+            assertTrue(json.has("o", "v"));
+
+            json.index("m");
+            assertTrue(json.has("m", new int[] {4, 5, 6}));
+            assertEquals(0, json.indexOf("m", plain.get("m[0]")));
+            assertFalse(json.has("m", new int[] {4, 5}));
+
+            //regular arrays on the receiver side
+            JSON numericPatch = new JSON("[{\"op\":\"test\",\"path\":\"/m/1\",\"value\":[4,5,6]},{\"op\":\"test\",\"path\":\"/m\",\"value\":[[1,2,3],[4,5,6]]}]");
+            plain.copy().apply(numericPatch);
+            json.copy().apply(plainPatch);
+            assertEquals(0, JSON.diff(plain, json).node().size());
+            assertEquals(0, JSON.diff(json, plain).node().size());
+
+            json.remove("m[]", new int[] {1, 2, 3});
+            assertEquals("[[4,5,6]]", json.get("m").toString());
+        } finally {
+            JSON.setNumericArrayThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void testDuplicateKeysRejectedByAllReaders() {
+        final String duplicated = "{\"x\":{\"a\":1,\"a\":2}}";
+        assertDuplicateKeyRejected(new JSON(duplicated));
+        int threshold = JSON.getNumericArrayThreshold();
+        JSON.setNumericArrayThreshold(3);
+        try {
+            assertDuplicateKeyRejected(new JSON(duplicated));
+        } finally {
+            JSON.setNumericArrayThreshold(threshold);
+        }
+        try {
+            JSON.interned(duplicated);
+            fail("Duplicate key should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof JsonMappingException);
+        }
+        try {
+            new JSON(duplicated).project("x.a");
+            fail("Duplicate key should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof JsonMappingException);
+        }
+    }
+
+    private static void assertDuplicateKeyRejected(JSON json) {
+        try {
+            json.node();
+            fail("Duplicate key should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof JsonMappingException);
+        }
+    }
+
+    @Test
+    public void testQueryOrderIndependentOfStorage() {
+        String s = "{\"a\":{\"a\":1,\"b\":[{\"a\":[2,{\"a\":3}]}]},\"c\":{\"a\":4}}";
+        String[] expressions = {"$..a", "$.a..a", "$..[?(@.a)]", "$..a[*]", "$..*", "$..[0]", "$.a.b..a"};
+        JSON tree = JSON.fromNode(JSON.parse(s));
+        for (String expression : expressions) {
+            List<String> expected = strings(tree.query(expression));
+            assertEquals(expression, expected, strings(new JSON(s).query(expression)));
+            assertEquals(expression, expected, strings(JSON.tape(s).query(expression)));
+        }
+        assertEquals(Arrays.asList("{\"a\":1}", "1"), strings(new JSON("{\"a\":{\"a\":1}}").query("$..a")));
+    }
+
+    private static List<String> strings(Stream<JsonNode> nodes) {
+        List<String> strings = new ArrayList<String>();
+        for (JsonNode node : nodes.collect(Collectors.<JsonNode>toList())) {
+            strings.add(node.toString());
+        }
+        return strings;
+    }
+
+    @Test
+    public void testPatchLargeReorder() {
+        ArrayNode source = JsonNodeFactory.instance.arrayNode();
+        ArrayNode reversed = JsonNodeFactory.instance.arrayNode();
+        for (int i = 0; i < 100000; i++) {
+            source.add(i);
+            reversed.insert(0, i);
+        }
+        long started = System.nanoTime();
+        JSON patch = JSON.diff(new JSON(source), new JSON(reversed));
+        assertTrue(System.nanoTime() - started < 10000000000L);
+        assertEquals(99999, patch.node().size());
+        assertEquals("{\"op\":\"move\",\"from\":\"/99999\",\"path\":\"/0\"}", patch.node().get(0).toString());
+
+        //permutations too large for the LCS are placed by moves only
+        Random random = new Random(7);
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 3000; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, random);
+        JSON from = JSON.newArray();
+        JSON to = JSON.newArray();
+        for (int i = 0; i < values.size(); i++) {
+            from.set("[]", i);
+            if (values.get(i) % 10 != 0) {
+                to.set("[]", values.get(i));
+            }
+        }
+        to.set("[]", -1);
+        assertEquals(to.node(), from.copy().apply(JSON.diff(from, to)).node());
+    }
+
+    public static class FailingEventListener implements JSONEventListener {
+        public FailingEventListener() {
+            throw new IllegalStateException("Not configured");
+        }
+
+        @Override
+        public boolean isEnabled(JSONEvent.Type type) {
+            return true;
+        }
+
+        @Override
+        public long getThresholdNanos(JSONEvent.Type type) {
+            return 0L;
+        }
+
+        @Override
+        public void onEvent(JSONEvent event) {
+        }
+    }
+
     public static class TestPOJO {
         String name;
 
@@ -417,6 +1581,28 @@ public class JSONTest {
         }
     }
 
+    public static class TestAddress {
+        String city;
+        String zip;
+    }
+
+    public static class TestPersonWithAddress {
+        String name;
+        TestAddress address;
+        List<String> tags;
+    }
+
+    public static class Raw {
+        @JsonSerialize(using = JSON.RawSerializer.class)
+        private JSON data;
+    }
+
+    public static class RawHolder {
+        @JsonDeserialize(using = JSON.RawDeserializer.class)
+        private JSON data;
+        private int version;
+    }
+
     public static class Complex {
         private JSON myJSON;
         private ClassedJSON myClassedJSON;
@@ -0,0 +1,108 @@
+package com.sproutigy.commons.jsonright.jackson.jfr;
+
+import com.sproutigy.commons.jsonright.jackson.JSONEvent;
+import com.sproutigy.commons.jsonright.jackson.JSONEventListener;
+import jdk.jfr.EventType;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+//reports JSON operations as Flight Recorder events, registered as a JSONEventListener service
+public final class JFREventListener implements JSONEventListener {
+
+    private static final int MAX_PENDING = 64;
+
+    private final Map<JSONEvent.Type, EventType> eventTypes = new EnumMap<JSONEvent.Type, EventType>(JSONEvent.Type.class);
+    private final ThreadLocal<ArrayDeque<JSONFlightEvent>> pending = new ThreadLocal<ArrayDeque<JSONFlightEvent>>() {
+        @Override
+        protected ArrayDeque<JSONFlightEvent> initialValue() {
+            return new ArrayDeque<JSONFlightEvent>();
+        }
+    };
+
+    public JFREventListener() {
+        for (JSONEvent.Type type : JSONEvent.Type.values()) {
+            eventTypes.put(type, EventType.getEventType(eventClass(type)));
+        }
+    }
+
+    //enabled operation is begun here, so that JFR measures its duration and applies its own threshold on commit
+    @Override
+    public boolean isEnabled(JSONEvent.Type type) {
+        if (!eventTypes.get(type).isEnabled()) {
+            return false;
+        }
+        JSONFlightEvent event = create(type);
+        event.begin();
+        ArrayDeque<JSONFlightEvent> events = pending.get();
+        if (events.size() == MAX_PENDING) {
+            events.removeLast();
+        }
+        events.push(event);
+        return true;
+    }
+
+    @Override
+    public long getThresholdNanos(JSONEvent.Type type) {
+        return 0L;
+    }
+
+    @Override
+    public void onEvent(JSONEvent event) {
+        //events begun by operations that failed before reporting are nested in this one, so they are dropped
+        ArrayDeque<JSONFlightEvent> events = pending.get();
+        Class<? extends JSONFlightEvent> eventClass = eventClass(event.getType());
+        JSONFlightEvent flightEvent = events.poll();
+        while (flightEvent != null && flightEvent.getClass() != eventClass) {
+            flightEvent = events.poll();
+        }
+        if (flightEvent == null) {
+            return;
+        }
+
+        flightEvent.end();
+        if (flightEvent.shouldCommit()) {
+            flightEvent.size = event.getSize();
+            flightEvent.storageType = event.getStorageType() != null ? event.getStorageType().name() : null;
+            flightEvent.formatting = event.getFormatting() != null ? event.getFormatting().name() : null;
+            flightEvent.targetClass = event.getTargetClass();
+            flightEvent.path = event.getPath();
+            flightEvent.commit();
+        }
+    }
+
+    private static JSONFlightEvent create(JSONEvent.Type type) {
+        switch (type) {
+            case Parse:
+                return new JSONFlightEvent.Parse();
+            case Serialize:
+                return new JSONFlightEvent.Serialize();
+            case Deserialize:
+                return new JSONFlightEvent.Deserialize();
+            case Build:
+                return new JSONFlightEvent.Build();
+            case ResolvePath:
+                return new JSONFlightEvent.ResolvePath();
+            default:
+                return new JSONFlightEvent.ClassedDecode();
+        }
+    }
+
+    private static Class<? extends JSONFlightEvent> eventClass(JSONEvent.Type type) {
+        switch (type) {
+            case Parse:
+                return JSONFlightEvent.Parse.class;
+            case Serialize:
+                return JSONFlightEvent.Serialize.class;
+            case Deserialize:
+                return JSONFlightEvent.Deserialize.class;
+            case Build:
+                return JSONFlightEvent.Build.class;
+            case ResolvePath:
+                return JSONFlightEvent.ResolvePath.class;
+            default:
+                return JSONFlightEvent.ClassedDecode.class;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sproutigy.commons.jsonright.jackson.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+//Flight Recorder events of JSON operations, enabled and filtered by threshold in JFR settings (i.e. a .jfc file)
+@Category("JSON Right")
+@Threshold("20 ms")
+public abstract class JSONFlightEvent extends Event {
+
+    @Label("Size")
+    @Description("Characters of parsed or written text, bytes for binary formats, -1 where unknown")
+    long size;
+
+    @Label("Storage Type")
+    @Description("Storage the operation started from")
+    String storageType;
+
+    @Label("Formatting")
+    String formatting;
+
+    @Label("Target Class")
+    Class<?> targetClass;
+
+    @Label("Path")
+    String path;
+
+    JSONFlightEvent() {
+    }
+
+    @Name("com.sproutigy.jsonright.Parse")
+    @Label("JSON Parse")
+    @Description("String or tape materialized into a tree")
+    public static final class Parse extends JSONFlightEvent {
+    }
+
+    @Name("com.sproutigy.jsonright.Serialize")
+    @Label("JSON Serialize")
+    @Description("Tree or tape written as text")
+    public static final class Serialize extends JSONFlightEvent {
+    }
+
+    @Name("com.sproutigy.jsonright.Deserialize")
+    @Label("JSON Deserialize")
+    @Description("Document deserialized into an object")
+    public static final class Deserialize extends JSONFlightEvent {
+    }
+
+    @Name("com.sproutigy.jsonright.Build")
+    @Label("JSON Build")
+    @Description("Document built by a builder")
+    public static final class Build extends JSONFlightEvent {
+    }
+
+    @Name("com.sproutigy.jsonright.ResolvePath")
+    @Label("JSON Resolve Path")
+    @Description("Value resolved at a path")
+    public static final class ResolvePath extends JSONFlightEvent {
+    }
+
+    @Name("com.sproutigy.jsonright.ClassedDecode")
+    @Label("JSON Classed Decode")
+    @Description("Value of a ClassedJSON decoded into its class")
+    public static final class ClassedDecode extends JSONFlightEvent {
+    }
+}
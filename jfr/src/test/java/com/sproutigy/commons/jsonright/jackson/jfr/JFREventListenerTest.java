@@ -0,0 +1,63 @@
+package com.sproutigy.commons.jsonright.jackson.jfr;
+
+import com.sproutigy.commons.jsonright.jackson.JSON;
+import com.sproutigy.commons.jsonright.jackson.JSONEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JFREventListenerTest {
+
+    @Test
+    public void testDiscovered() {
+        assertTrue(JSON.getEventListener() instanceof JFREventListener);
+        assertFalse(JSON.getEventListener().isEnabled(JSONEvent.Type.Parse));
+    }
+
+    @Test
+    public void testRecorded() throws IOException {
+        Recording recording = new Recording();
+        try {
+            recording.enable("com.sproutigy.jsonright.Parse").withThreshold(Duration.ZERO);
+            recording.enable("com.sproutigy.jsonright.ResolvePath").withThreshold(Duration.ofHours(1));
+            recording.start();
+            JSON json = new JSON("{\"a\":[1,2,3]}");
+            json.get("a[1]");
+            recording.stop();
+
+            List<RecordedEvent> parses = events(recording, "com.sproutigy.jsonright.Parse");
+            assertEquals(1, parses.size());
+            assertEquals(13, parses.get(0).getLong("size"));
+            assertEquals("String", parses.get(0).getString("storageType"));
+            assertEquals(0, events(recording, "com.sproutigy.jsonright.ResolvePath").size());
+        } finally {
+            recording.close();
+        }
+    }
+
+    private static List<RecordedEvent> events(Recording recording, String name) throws IOException {
+        Path file = Files.createTempFile("json-right", ".jfr");
+        try {
+            recording.dump(file);
+            List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals(name)) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.sproutigy.commons.jsonright.jackson.msgpack;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import com.sproutigy.commons.jsonright.jackson.JSON;
+import com.sproutigy.commons.jsonright.jackson.JSONFormatProvider;
+
+public final class MessagePackFormatProvider implements JSONFormatProvider {
+    @Override
+    public JSON.Format getFormat() {
+        return JSON.Format.MessagePack;
+    }
+
+    @Override
+    public JsonFactory createFactory() {
+        return new MessagePackFactory();
+    }
+}
@@ -0,0 +1,35 @@
+package com.sproutigy.commons.jsonright.jackson.msgpack;
+
+import com.sproutigy.commons.jsonright.jackson.JSON;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MessagePackFormatTest {
+
+    @Test
+    public void testRoundTrip() {
+        JSON json = JSON.fromString("{\"name\":\"John\",\"age\":25,\"knows\":[\"Java\",\"C++\"]}");
+
+        byte[] data = json.toBytes(JSON.Format.MessagePack);
+        JSON decoded = JSON.fromBytes(data, JSON.Format.MessagePack);
+
+        assertEquals("John", decoded.get("name", ""));
+        assertEquals(25, (int) decoded.get("age", 0));
+        assertEquals("C++", decoded.get("knows[1]", ""));
+        assertEquals(json.toStringCompact(), decoded.toStringCompact());
+    }
+
+    @Test
+    public void testBuilder() {
+        byte[] data = JSON.builder(JSON.Format.MessagePack)
+                .startObject()
+                    .field("hello", "world")
+                    .field("fragment", JSON.fromString("[1,2]"))
+                .endObject()
+                .buildBytes();
+
+        JSON decoded = JSON.fromBytes(data, JSON.Format.MessagePack);
+        assertEquals("{\"hello\":\"world\",\"fragment\":[1,2]}", decoded.toStringCompact());
+    }
+}
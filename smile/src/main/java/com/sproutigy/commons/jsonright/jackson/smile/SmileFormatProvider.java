@@ -0,0 +1,18 @@
+package com.sproutigy.commons.jsonright.jackson.smile;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sproutigy.commons.jsonright.jackson.JSON;
+import com.sproutigy.commons.jsonright.jackson.JSONFormatProvider;
+
+public final class SmileFormatProvider implements JSONFormatProvider {
+    @Override
+    public JSON.Format getFormat() {
+        return JSON.Format.Smile;
+    }
+
+    @Override
+    public JsonFactory createFactory() {
+        return new SmileFactory();
+    }
+}